@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("com.gradleup.shadow") version "8.3.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "me.tud"
@@ -27,4 +28,20 @@ tasks.withType<Jar> {
 
 tasks.test {
     useJUnitPlatform()
+    // the http cache and jar store live under the home folder, tests must not touch the real ones
+    systemProperty("user.home", layout.buildDirectory.dir("test-home").get().asFile.path)
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+}
+
+tasks.named<Jar>("jmhJar") {
+    archiveFileName.set("server-wizard-jmh.jar")
+    destinationDirectory.set(layout.buildDirectory.dir("libs"))
+    manifest {
+        attributes["Main-Class"] = "org.openjdk.jmh.Main"
+    }
 }
\ No newline at end of file
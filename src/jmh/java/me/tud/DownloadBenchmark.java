@@ -0,0 +1,127 @@
+package me.tud;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DownloadBenchmark {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @Param({"33554432"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    // bytes per second per connection, 0 means unthrottled loopback
+    @Param({"0", "16777216"})
+    public long bandwidth;
+
+    private byte[] payload;
+    private HttpServer server;
+    private URL url;
+    private Path directory, target;
+
+    @Setup
+    public void setup() throws IOException {
+        payload = new byte[size];
+        new Random(0).nextBytes(payload);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/server.jar", this::handle);
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/server.jar");
+        directory = Files.createTempDirectory("download-benchmark");
+        target = directory.resolve("server.jar");
+    }
+
+    @Benchmark
+    public Path download() throws IOException, InterruptedException {
+        Downloader.download(url, target, connections);
+        return target;
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteTarget() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.stop(0);
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(directory);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(payload.length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            int from = 0, to = payload.length - 1, status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null && range.startsWith("bytes=")) {
+                String[] bounds = range.substring("bytes=".length()).split("-", 2);
+                from = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty())
+                    to = Integer.parseInt(bounds[1]);
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + payload.length);
+            }
+            int length = to - from + 1;
+            exchange.sendResponseHeaders(status, length);
+            OutputStream output = exchange.getResponseBody();
+            long start = System.nanoTime();
+            for (int offset = 0; offset < length; offset += CHUNK) {
+                output.write(payload, from + offset, Math.min(CHUNK, length - offset));
+                if (bandwidth > 0)
+                    throttle(start, offset + CHUNK);
+            }
+        }
+    }
+
+    private void throttle(long start, long sent) {
+        long expected = start + sent * 1_000_000_000L / bandwidth;
+        long wait = expected - System.nanoTime();
+        if (wait <= 0)
+            return;
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
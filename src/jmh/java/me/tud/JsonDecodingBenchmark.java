@@ -0,0 +1,105 @@
+package me.tud;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class JsonDecodingBenchmark {
+
+    private GitHubAPI.Repository repository;
+    private byte[] releases, search, paperProject, paperVersion;
+
+    @Setup
+    public void setup() {
+        repository = GitHubAPI.SKRIPT_REPO;
+        releases = Payloads.load(Payloads.GITHUB_RELEASES);
+        search = Payloads.load(Payloads.GITHUB_SEARCH);
+        paperProject = Payloads.load(Payloads.PAPER_PROJECT);
+        paperVersion = Payloads.load(Payloads.PAPER_VERSION);
+    }
+
+    @Benchmark
+    public List<GitHubAPI.Release> releasesTree() {
+        List<GitHubAPI.Release> list = new ArrayList<>();
+        for (JsonElement element : tree(releases).getAsJsonArray())
+            list.add(GitHubAPI.Release.from(repository, element.getAsJsonObject()));
+        return list;
+    }
+
+    @Benchmark
+    public List<GitHubAPI.Release> releasesStreaming() throws IOException {
+        return stream(releases, JsonBodyHandler.list(reader -> GitHubAPI.Release.read(repository, reader)));
+    }
+
+    @Benchmark
+    public List<GitHubAPI.Repository> searchTree() {
+        List<GitHubAPI.Repository> list = new ArrayList<>();
+        for (JsonElement element : tree(search).getAsJsonObject().getAsJsonArray("items"))
+            list.add(GitHubAPI.Repository.from(element.getAsJsonObject()));
+        return list;
+    }
+
+    @Benchmark
+    public List<GitHubAPI.Repository> searchStreaming() throws IOException {
+        return stream(search, GitHubAPI::readSearchItems);
+    }
+
+    @Benchmark
+    public List<PaperAPI.Version> paperVersionsTree() {
+        List<PaperAPI.Version> list = new ArrayList<>();
+        for (JsonElement element : tree(paperProject).getAsJsonObject().getAsJsonArray("versions"))
+            list.add(new PaperAPI.Version(element.getAsString()));
+        return list;
+    }
+
+    @Benchmark
+    public List<PaperAPI.Version> paperVersionsStreaming() throws IOException {
+        return stream(paperProject, reader -> PaperAPI.readArray(reader, "versions", versionReader -> new PaperAPI.Version(versionReader.nextString())));
+    }
+
+    @Benchmark
+    public List<Integer> paperBuildsTree() {
+        List<Integer> list = new ArrayList<>();
+        for (JsonElement element : tree(paperVersion).getAsJsonObject().getAsJsonArray("builds"))
+            list.add(element.getAsInt());
+        return list;
+    }
+
+    @Benchmark
+    public List<Integer> paperBuildsStreaming() throws IOException {
+        return stream(paperVersion, reader -> PaperAPI.readArray(reader, "builds", JsonReader::nextInt));
+    }
+
+    // mirrors the previous JsonBodyHandler: whole body as a String, then a full tree
+    private static JsonElement tree(byte[] body) {
+        return JsonParser.parseString(new String(body, Charset.defaultCharset()));
+    }
+
+    private static <T> T stream(byte[] body, JsonBodyHandler.Decoder<T> decoder) throws IOException {
+        return JsonBodyHandler.decode(new ByteArrayInputStream(body), decoder);
+    }
+
+}
@@ -0,0 +1,59 @@
+package me.tud;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private List<JsonObject> releases, repositories;
+
+    @Setup
+    public void setup() {
+        releases = new ArrayList<>();
+        for (JsonElement element : parse(Payloads.GITHUB_RELEASES).getAsJsonArray())
+            releases.add(element.getAsJsonObject());
+        repositories = new ArrayList<>();
+        for (JsonElement element : parse(Payloads.GITHUB_SEARCH).getAsJsonObject().getAsJsonArray("items"))
+            repositories.add(element.getAsJsonObject());
+    }
+
+    @Benchmark
+    public void releaseFrom(Blackhole blackhole) {
+        for (JsonObject release : releases)
+            blackhole.consume(GitHubAPI.Release.from(GitHubAPI.SKRIPT_REPO, release));
+    }
+
+    @Benchmark
+    public void repositoryFrom(Blackhole blackhole) {
+        for (JsonObject repository : repositories)
+            blackhole.consume(GitHubAPI.Repository.from(repository));
+    }
+
+    private static JsonElement parse(String payload) {
+        return JsonParser.parseString(new String(Payloads.load(payload), StandardCharsets.UTF_8));
+    }
+
+}
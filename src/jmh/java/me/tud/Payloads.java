@@ -0,0 +1,28 @@
+package me.tud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+final class Payloads {
+
+    static final String GITHUB_RELEASES = "github-releases.json";
+    static final String GITHUB_SEARCH = "github-search.json";
+    static final String PAPER_PROJECT = "paper-project.json";
+    static final String PAPER_VERSION = "paper-version.json";
+
+    private Payloads() {
+        throw new UnsupportedOperationException();
+    }
+
+    static byte[] load(String name) {
+        try (InputStream input = Payloads.class.getResourceAsStream("/" + name)) {
+            if (input == null)
+                throw new IllegalStateException("Missing benchmark payload " + name);
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
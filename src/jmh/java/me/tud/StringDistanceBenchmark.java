@@ -0,0 +1,123 @@
+package me.tud;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringDistanceBenchmark {
+
+    private static final String[] ADDONS = {
+        "skript-reflect", "SkBee", "skript-yaml", "Skellett", "SkQuery", "skript-gui", "skript-db", "TuSKe",
+        "MundoSK", "skript-placeholders", "skript-packet", "SkUtilities", "Skent", "skRayFall", "SharpSK",
+        "skript-particle", "skript-npc", "skript-worldguard", "skript-holo", "Vixio", "SkJson", "skript-bungee",
+        "DiSky", "skript-luckperms", "Skore", "skript-queue", "skript-vault", "skript-citizens", "skript-web",
+        "skript-discord", "SkriptHub", "skript-mirror", "skript-math", "skript-regions", "skript-scoreboard",
+        "SkStuff", "Skematic", "skript-datapacks", "skript-bossbar", "skript-titles", "skript-json", "SkCrew",
+        "Lusk", "skript-commands", "skript-maps", "skript-worldedit", "skript-protocollib", "skript-redis",
+        "skript-mysql", "skript-gson", "skript-hologram", "skript-image", "skript-tablist", "SkAction",
+        "skript-entities", "skript-nbt", "skript-armorstands", "skript-inventory", "skript-http", "skript-files",
+        "Skent-plus", "skript-chat", "SkLib", "skript-timings", "skript-bedrock", "skript-floodgate"
+    };
+
+    @Param({"skbee", "skript-reflct", "skriptyaml", "placeholders"})
+    public String query;
+
+    private List<String> names;
+
+    @Setup
+    public void setup() {
+        names = new ArrayList<>(ADDONS.length);
+        for (String addon : ADDONS)
+            names.add(addon.toLowerCase(Locale.ENGLISH));
+    }
+
+    @Benchmark
+    public void fullMatrix(Blackhole blackhole) {
+        for (String name : names)
+            blackhole.consume(fullMatrix(query, name));
+    }
+
+    @Benchmark
+    public void twoRows(Blackhole blackhole) {
+        for (String name : names)
+            blackhole.consume(StringDistance.editDistance(query, name));
+    }
+
+    @Benchmark
+    public void bounded(Blackhole blackhole) {
+        for (String name : names)
+            blackhole.consume(StringDistance.editDistance(query, name, 2));
+    }
+
+    @Benchmark
+    public void boundedDamerau(Blackhole blackhole) {
+        for (String name : names)
+            blackhole.consume(StringDistance.damerauDistance(query, name, 2));
+    }
+
+    @Benchmark
+    public List<String> linearFilter() {
+        List<String> matches = new ArrayList<>();
+        for (String name : names) {
+            if (fullMatrix(query, name) < 3)
+                matches.add(name);
+        }
+        return matches;
+    }
+
+    // what searchRepositories does with a page of results
+    @Benchmark
+    public List<String> boundedFilter() {
+        List<String> matches = new ArrayList<>();
+        for (String name : names) {
+            if (StringDistance.editDistance(query, name, 2) <= 2)
+                matches.add(name);
+        }
+        return matches;
+    }
+
+    // the original full matrix implementation, kept as the baseline
+    private static int fullMatrix(String s, String t) {
+        int m = s.length();
+        int n = t.length();
+        int[][] dp = new int[m + 1][n + 1];
+
+        for (int i = 1; i <= m; i++)
+            dp[i][0] = i;
+
+        for (int j = 1; j <= n; j++)
+            dp[0][j] = j;
+
+        for (int j = 1; j <= n; j++) {
+            for (int i = 1; i <= m; i++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                dp[i][j] = Math.min(
+                    Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
+                    dp[i - 1][j - 1] + cost
+                );
+            }
+        }
+        return dp[m][n];
+    }
+
+}
@@ -0,0 +1,94 @@
+package me.tud;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ConfigPatcher {
+
+    private static final Pattern ENTRY_PATTERN = Pattern.compile("^(\\s*)([^#\\s][^:]*?)(\\s*:\\s*)(.*?)(\\s*)$");
+
+    private final List<Rule> rules;
+
+    public ConfigPatcher(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    public ConfigPatcher(Rule... rules) {
+        this(List.of(rules));
+    }
+
+    // returns how many lines were changed
+    public int patch(InputStream input, OutputStream output) throws IOException {
+        Reader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        StringBuilder line = new StringBuilder();
+        int changed = 0;
+        int read;
+        while ((read = reader.read()) != -1) {
+            char c = (char) read;
+            if (c == '\n') {
+                changed += write(writer, line);
+                writer.write(c);
+                line.setLength(0);
+            } else {
+                line.append(c);
+            }
+        }
+        changed += write(writer, line);
+        writer.flush();
+        return changed;
+    }
+
+    private int write(Writer writer, StringBuilder line) throws IOException {
+        // keep a \r of a CRLF separator out of the value
+        boolean carriageReturn = !line.isEmpty() && line.charAt(line.length() - 1) == '\r';
+        String content = carriageReturn ? line.substring(0, line.length() - 1) : line.toString();
+        String patched = apply(content);
+        writer.write(patched);
+        if (carriageReturn)
+            writer.write('\r');
+        return patched.equals(content) ? 0 : 1;
+    }
+
+    String apply(String line) {
+        Matcher matcher = ENTRY_PATTERN.matcher(line);
+        if (!matcher.matches())
+            return line;
+        String key = matcher.group(2);
+        String value = matcher.group(4);
+        for (Rule rule : rules) {
+            if (rule.matches(key, value))
+                return matcher.group(1) + key + matcher.group(3) + rule.value() + matcher.group(5);
+        }
+        return line;
+    }
+
+    // replaces the value of every entry named key, or only those currently set to expected when it isn't null
+    public record Rule(String key, String expected, String value) {
+
+        public static Rule set(String key, String value) {
+            return new Rule(key, null, value);
+        }
+
+        public static Rule replace(String key, String expected, String value) {
+            return new Rule(key, expected, value);
+        }
+
+        private boolean matches(String key, String value) {
+            return this.key.equals(key) && (expected == null || expected.equals(value));
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package me.tud;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadScheduler implements AutoCloseable {
+
+    public static final int DEFAULT_CONCURRENCY = Integer.getInteger("wizard.downloads.concurrency", 4);
+    // the read watchdog closes a stalled body within one and a half read timeouts, so that's how long a worker can be stuck
+    private static final long SHUTDOWN_TIMEOUT = Long.getLong("wizard.downloads.shutdownTimeout", RequestPolicy.DOWNLOAD.readTimeout().toSeconds() * 2);
+
+    private final ExecutorService executor;
+    private final CompletionService<Void> completionService;
+    private int pending;
+
+    public DownloadScheduler() {
+        this(DEFAULT_CONCURRENCY);
+    }
+
+    public DownloadScheduler(int concurrency) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "download-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.completionService = new ExecutorCompletionService<>(executor);
+    }
+
+    public void submit(Task task) {
+        completionService.submit(() -> {
+            task.run();
+            return null;
+        });
+        pending++;
+    }
+
+    public void await() throws IOException, InterruptedException {
+        try {
+            while (pending > 0) {
+                Future<Void> future = completionService.take();
+                pending--;
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            shutdown();
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException exception)
+                throw exception;
+            if (cause instanceof InterruptedException exception)
+                throw exception;
+            if (cause instanceof RuntimeException exception)
+                throw exception;
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            shutdown();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    // the workers write into the server folder, so they have to be gone before a failed setup deletes it
+    private void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Task {
+
+        void run() throws IOException, InterruptedException;
+
+    }
+
+}
@@ -0,0 +1,439 @@
+package me.tud;
+
+import com.google.gson.Gson;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+
+public final class Downloader {
+
+    private static final long RANGE_THRESHOLD = Long.getLong("wizard.downloads.rangeThreshold", 8L * 1024 * 1024);
+    private static final int CONNECTIONS = Integer.getInteger("wizard.downloads.connections", 4);
+    private static final long SAVE_INTERVAL = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Gson GSON = new Gson();
+
+    private static final int OK = 200;
+    private static final int PARTIAL_CONTENT = 206;
+
+    private Downloader() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static String download(URL url, Path target) throws IOException, InterruptedException {
+        return download(url, target, CONNECTIONS, null);
+    }
+
+    public static String download(URL url, Path target, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        return download(url, target, CONNECTIONS, handler);
+    }
+
+    public static String download(URL url, Path target, int connections) throws IOException, InterruptedException {
+        return download(url, target, connections, null);
+    }
+
+    // the handler sees every archive entry, straight off the wire when the file arrives as a single stream
+    // returns the sha256 of the downloaded file
+    public static String download(URL url, Path target, int connections, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        URI uri = toURI(url);
+        ProgressDisplay.Transfer progress = ProgressDisplay.current();
+        Path part = target.resolveSibling(target.getFileName() + ".part");
+        Path stateFile = target.resolveSibling(target.getFileName() + ".part.state");
+
+        long start = System.nanoTime();
+        HttpResponse<InputStream> probe = RequestPolicy.DOWNLOAD.send(
+            HttpUtils.client(),
+            HttpRequest.newBuilder(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build()
+        );
+        probe.body().close();
+        Metrics.request(Metrics.current(), "HEAD", uri, probe.statusCode(), 0, Metrics.Cache.BYPASS, start);
+        long length = probe.headers().firstValueAsLong("Content-Length").orElse(-1);
+        boolean ranged = probe.statusCode() == OK
+            && connections > 1
+            && length >= RANGE_THRESHOLD
+            && probe.headers().firstValue("Accept-Ranges").map(value -> value.equalsIgnoreCase("bytes")).orElse(false);
+        String hash = null;
+        if (ranged) {
+            String validator = probe.headers().firstValue("ETag")
+                .or(() -> probe.headers().firstValue("Last-Modified"))
+                .orElse(null);
+            try {
+                hash = downloadRanges(url.toString(), probe.uri(), length, validator, connections, part, stateFile, progress);
+            } catch (RangeException e) {
+                // the server advertised ranges but sent something else, or the file changed underneath the chunks
+                // either way what's on disk can't be trusted, so it's fetched again as a single stream
+                ranged = false;
+            }
+        }
+        if (!ranged) {
+            Files.deleteIfExists(stateFile);
+            MessageDigest digest = JarStore.sha256();
+            if (downloadStream(uri, part, digest, progress, handler))
+                handler = null;
+            hash = HexFormat.of().formatHex(digest.digest());
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (handler != null)
+            ZipStream.scan(target, handler);
+        return hash;
+    }
+
+    // returns whether the handler was served from the stream, the digest sees every byte as it's written
+    private static boolean downloadStream(URI uri, Path part, MessageDigest digest, ProgressDisplay.Transfer progress, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        return RequestPolicy.DOWNLOAD.send(HttpUtils.client(), HttpRequest.newBuilder(uri).GET().build(), response -> {
+            ChannelTee tee = null;
+            // a retried attempt starts the file and the digest over
+            digest.reset();
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (response.statusCode() != OK)
+                    throw new IOException("Failed to download " + uri + ": HTTP " + response.statusCode());
+                progress.start(response.headers().firstValueAsLong("Content-Length").orElse(-1), 0);
+                tee = new ChannelTee(uri, response.body(), channel, 0, digest, (buffer, offset, read, position) -> progress.advance(read));
+                boolean scanned = handler != null && ZipStream.tryScan(tee, handler);
+                tee.drain();
+                return scanned;
+            } finally {
+                Metrics.request(Metrics.current(), "GET", uri, response.statusCode(), tee != null ? tee.transferred : 0, Metrics.Cache.BYPASS, start);
+            }
+        });
+    }
+
+    // returns the sha256, hashed front to back while the later chunks are still arriving
+    private static String downloadRanges(String url, URI uri, long length, String validator, int connections, Path part, Path stateFile, ProgressDisplay.Transfer progress) throws IOException, InterruptedException {
+        State state = State.load(stateFile);
+        if (state == null || !state.matches(url, length, validator) || !Files.exists(part) || Files.size(part) != length) {
+            state = State.create(url, length, validator, connections);
+            try (RandomAccessFile file = new RandomAccessFile(part.toFile(), "rw")) {
+                file.setLength(length);
+            }
+        }
+
+        State finalState = state;
+        String hash;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             DownloadScheduler scheduler = new DownloadScheduler(state.chunks.size())) {
+            PrefixDigest digest = new PrefixDigest(channel, state.chunks, length);
+            // a resumed download has bytes on disk already, they're read back once
+            digest.catchUp();
+            progress.start(length, state.chunks.stream().mapToLong(chunk -> chunk.written).sum());
+            for (Chunk chunk : state.chunks) {
+                if (chunk.remaining() > 0)
+                    scheduler.submit(() -> downloadChunk(uri, validator, channel, chunk, finalState, stateFile, digest, progress));
+            }
+            scheduler.await();
+            channel.force(false);
+            hash = digest.finish();
+        } finally {
+            state.save(stateFile);
+        }
+        Files.deleteIfExists(stateFile);
+        return hash;
+    }
+
+    // a dropped connection resumes the chunk from the last written byte instead of failing the whole download
+    private static void downloadChunk(URI uri, String validator, FileChannel channel, Chunk chunk, State state, Path stateFile, PrefixDigest digest, ProgressDisplay.Transfer progress) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            long before = chunk.written;
+            try {
+                downloadChunkOnce(uri, validator, channel, chunk, state, stateFile, digest, progress);
+                return;
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException || e instanceof RangeException || attempt > RequestPolicy.DOWNLOAD.retries())
+                    throw e;
+                if (chunk.written > before)
+                    attempt = 0;
+                RequestPolicy.DOWNLOAD.pause(Math.max(1, attempt));
+            }
+        }
+    }
+
+    private static void downloadChunkOnce(URI uri, String validator, FileChannel channel, Chunk chunk, State state, Path stateFile, PrefixDigest digest, ProgressDisplay.Transfer progress) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+            .GET()
+            .setHeader("Range", "bytes=" + (chunk.start + chunk.written) + "-" + chunk.end);
+        if (validator != null)
+            builder.setHeader("If-Range", validator);
+        long start = System.nanoTime();
+        long before = chunk.written;
+        HttpResponse<InputStream> response = RequestPolicy.DOWNLOAD.send(HttpUtils.client(), builder.build());
+        try (InputStream input = response.body()) {
+            if (response.statusCode() != PARTIAL_CONTENT)
+                throw new RangeException("Failed to download " + uri + ": expected a partial response but got HTTP " + response.statusCode());
+            long expected = chunk.remaining();
+            long transferred = transfer(uri, input, channel, chunk.start + chunk.written, (buffer, offset, read, position) -> {
+                chunk.written += read;
+                progress.advance(read);
+                digest.written(buffer, offset, read, position);
+                if (chunk.written - chunk.saved >= SAVE_INTERVAL) {
+                    chunk.saved = chunk.written;
+                    state.save(stateFile);
+                }
+            });
+            if (transferred != expected)
+                throw new IOException("Failed to download " + uri + ": range ended after " + transferred + " of " + expected + " bytes");
+        } finally {
+            Metrics.request(Metrics.current(), "GET", uri, response.statusCode(), chunk.written - before, Metrics.Cache.BYPASS, start);
+        }
+    }
+
+    private static long transfer(URI uri, InputStream input, FileChannel channel, long position, ProgressListener listener) throws IOException {
+        ChannelTee tee = new ChannelTee(uri, input, channel, position, null, listener);
+        tee.drain();
+        return tee.transferred;
+    }
+
+    private static URI toURI(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid download URL: " + url, e);
+        }
+    }
+
+    // writes everything read through it to the channel, so a parser pulling from it drives the download
+    private static final class ChannelTee extends FilterInputStream {
+
+        private final URI uri;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final ProgressListener listener;
+        private long position, transferred;
+
+        private ChannelTee(URI uri, InputStream input, FileChannel channel, long position, MessageDigest digest, ProgressListener listener) {
+            super(input);
+            this.uri = uri;
+            this.channel = channel;
+            this.position = position;
+            this.digest = digest;
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read <= 0)
+                return read;
+            if (Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException("Download of " + uri + " was cancelled");
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, read);
+            long start = position;
+            while (byteBuffer.hasRemaining())
+                position += channel.write(byteBuffer, position);
+            if (digest != null)
+                digest.update(buffer, offset, read);
+            transferred += read;
+            if (listener != null)
+                listener.transferred(buffer, offset, read, start);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void drain() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            //noinspection StatementWithEmptyBody
+            while (read(buffer, 0, buffer.length) != -1);
+        }
+
+    }
+
+    private static final class RangeException extends IOException {
+
+        private RangeException(String message) {
+            super(message);
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface ProgressListener {
+
+        void transferred(byte[] buffer, int offset, int length, long position) throws IOException;
+
+    }
+
+    // SHA-256 can't be split across chunks, so the digest follows the contiguous prefix of the file:
+    // bytes written right at its edge are hashed from the buffer, a chunk that finished ahead of it is read back once
+    // one worker at a time holds the digest, the lock only hands it over so the others never wait on a read
+    private static final class PrefixDigest {
+
+        private final MessageDigest digest = JarStore.sha256();
+        private final FileChannel channel;
+        private final List<Chunk> chunks;
+        private final long length;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // only touched by the worker holding the digest
+        private long hashed;
+        private boolean hashing, pending;
+
+        private PrefixDigest(FileChannel channel, List<Chunk> chunks, long length) {
+            this.channel = channel;
+            this.chunks = chunks;
+            this.length = length;
+        }
+
+        private void written(byte[] bytes, int offset, int count, long position) throws IOException {
+            synchronized (this) {
+                if (hashing) {
+                    // the bytes are on disk already, the holder picks them up before it lets go
+                    pending = true;
+                    return;
+                }
+                hashing = true;
+            }
+            try {
+                if (position == hashed) {
+                    digest.update(bytes, offset, count);
+                    hashed += count;
+                }
+                do {
+                    catchUp();
+                } while (!release());
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    hashing = false;
+                }
+                throw e;
+            }
+        }
+
+        // lets go of the digest unless another worker wrote something while it was held
+        private synchronized boolean release() {
+            if (pending) {
+                pending = false;
+                return false;
+            }
+            hashing = false;
+            return true;
+        }
+
+        // only called by the holder of the digest, or before and after the workers run
+        private void catchUp() throws IOException {
+            while (hashed < length) {
+                Chunk chunk = chunkAt(hashed);
+                long available = chunk.start + chunk.written;
+                if (available <= hashed)
+                    return;
+                while (hashed < available) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), available - hashed));
+                    int read = channel.read(buffer, hashed);
+                    if (read <= 0)
+                        throw new IOException("Downloaded file ended at " + hashed + " of " + length + " bytes");
+                    digest.update(buffer.array(), 0, read);
+                    hashed += read;
+                }
+            }
+        }
+
+        private Chunk chunkAt(long position) {
+            for (Chunk chunk : chunks) {
+                if (position >= chunk.start && position <= chunk.end)
+                    return chunk;
+            }
+            throw new IllegalStateException("No chunk covers byte " + position);
+        }
+
+        private synchronized String finish() throws IOException {
+            catchUp();
+            if (hashed != length)
+                throw new IOException("Only " + hashed + " of " + length + " bytes were downloaded");
+            return HexFormat.of().formatHex(digest.digest());
+        }
+
+    }
+
+    private static final class State {
+
+        private String url;
+        private long length;
+        private String validator;
+        private List<Chunk> chunks;
+
+        private static State create(String url, long length, String validator, int connections) {
+            State state = new State();
+            state.url = url;
+            state.length = length;
+            state.validator = validator;
+            state.chunks = new ArrayList<>(connections);
+            long chunkSize = (length + connections - 1) / connections;
+            for (long start = 0; start < length; start += chunkSize) {
+                Chunk chunk = new Chunk();
+                chunk.start = start;
+                chunk.end = Math.min(length, start + chunkSize) - 1;
+                state.chunks.add(chunk);
+            }
+            return state;
+        }
+
+        private static State load(Path file) {
+            if (!Files.exists(file))
+                return null;
+            try {
+                return GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), State.class);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        private boolean matches(String url, long length, String validator) {
+            return this.url.equals(url) && this.length == length && Objects.equals(this.validator, validator) && chunks != null;
+        }
+
+        private synchronized void save(Path file) throws IOException {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temp, GSON.toJson(this), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+    }
+
+    private static final class Chunk {
+
+        private long start, end;
+        private volatile long written;
+        private transient long saved;
+
+        private long remaining() {
+            return end - start + 1 - written;
+        }
+
+    }
+
+}
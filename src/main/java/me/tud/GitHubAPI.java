@@ -2,30 +2,44 @@ package me.tud;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class GitHubAPI {
 
-    private static final String GITHUB_ENDPOINT = "https://api.github.com";
+    static final String GITHUB_ENDPOINT = System.getProperty("wizard.github.endpoint", "https://api.github.com");
     private static final String GITHUB_SEARCH_ENDPOINT = GITHUB_ENDPOINT + "/search/repositories?q=%s+language:%s";
     private static final String GITHUB_RELEASES_ENDPOINT = GITHUB_ENDPOINT + "/repos/%s/%s/releases";
+    private static final String GITHUB_RELEASES_PAGE_ENDPOINT = GITHUB_RELEASES_ENDPOINT + "?per_page=%s&page=%s";
     private static final String GITHUB_RELEASES_LATEST_ENDPOINT = GITHUB_RELEASES_ENDPOINT + "/latest";
     private static final String GITHUB_ASSETS_ENDPOINT = GITHUB_ENDPOINT + "/repos/%s/%s/releases/%s/assets";
 
     public static final Repository SKRIPT_REPO = new Repository(new User("SkriptLang"), "Skript");
 
     private static final int OK = 200;
+    private static final int NOT_FOUND = 404;
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_DISTANCE = 2;
+    private static final int PAGE_PREFETCH = Integer.getInteger("wizard.github.pagePrefetch", 4);
+    private static final Pattern LINK_PATTERN = Pattern.compile("<([^>]+)>;\\s*rel=\"([^\"]+)\"");
+    private static final Pattern PAGE_PATTERN = Pattern.compile("[?&]page=(\\d+)");
 
     private GitHubAPI() {
         throw new UnsupportedOperationException();
@@ -34,39 +48,71 @@ public class GitHubAPI {
     public static List<Repository> searchRepositories(String name) throws IOException, URISyntaxException, InterruptedException {
         name = name.toLowerCase(Locale.ENGLISH);
         URI uri = new URI(GITHUB_SEARCH_ENDPOINT.formatted(name, "java"));
-        HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-            HttpRequest.newBuilder(uri)
-                .GET()
-                .setHeader("Accept", "application/vnd.github+json")
-                .build()
-        );
+        HttpResponse<List<Repository>> response = GitHubClient.send(uri, GitHubAPI::readSearchItems);
         if (response.statusCode() != OK)
-            throw new IOException("Failed to search repositories: " + response.body());
-
-        JsonObject body = response.body().getAsJsonObject();
-        int size = body.get("total_count").getAsInt();
-        List<Repository> repositories = new ArrayList<>(size);
-        for (JsonElement element : body.getAsJsonArray("items")) {
-            Repository repository = Repository.from(element.getAsJsonObject());
-            if (StringDistance.editDistance(name, repository.name().toLowerCase(Locale.ENGLISH)) < 3)
+            throw new IOException("Failed to search repositories: HTTP " + response.statusCode());
+
+        // a page holds at most a hundred names, a single pass with the banded distance beats building an index
+        // and keeps github's relevance order without sorting afterwards
+        List<Repository> repositories = new ArrayList<>();
+        for (Repository repository : response.body()) {
+            if (StringDistance.editDistance(name, repository.name().toLowerCase(Locale.ENGLISH), MAX_SEARCH_DISTANCE) <= MAX_SEARCH_DISTANCE)
                 repositories.add(repository);
         }
+        // whichever candidate gets picked, its releases are already on the way
+        preload(repositories);
+        return repositories;
+    }
+
+    // loads the releases and assets of all the repositories in batched GraphQL queries when a token is set, otherwise they're fetched lazily over REST
+    public static void preload(Collection<Repository> repositories) {
+        GitHubGraphQL.load(repositories);
+    }
+
+    static List<Repository> readSearchItems(JsonReader reader) throws IOException {
+        List<Repository> repositories = List.of();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("items")) repositories = JsonBodyHandler.list(Repository::read).decode(reader);
+            else reader.skipValue();
+        }
+        reader.endObject();
         return repositories;
     }
 
+    public static Repository repository(String owner, String name) {
+        if (SKRIPT_REPO.owner().name().equalsIgnoreCase(owner) && SKRIPT_REPO.name().equalsIgnoreCase(name))
+            return SKRIPT_REPO;
+        return new Repository(new User(owner), name);
+    }
+
     public record User(String name) {
 
         public static User from(JsonObject object) {
             return new User(object.get("login").getAsString());
         }
 
+        public static User read(JsonReader reader) throws IOException {
+            String login = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("login")) login = reader.nextString();
+                else reader.skipValue();
+            }
+            reader.endObject();
+            return new User(login);
+        }
+
     }
 
     public static class Repository {
 
         private final User owner;
         private final String name;
-        private transient List<Release> releases;
+        private final Object latestReleaseLock = new Object();
+        private final AtomicReference<CompletableFuture<Boolean>> graphQL = new AtomicReference<>();
+        private transient volatile List<Release> releases;
+        private transient Release latestRelease;
 
         public Repository(User owner, String name) {
             this.owner = owner;
@@ -88,25 +134,42 @@ public class GitHubAPI {
             );
         }
 
-        public List<Release> getReleases() throws IOException, InterruptedException {
-            if (releases != null)
-                return releases;
-            HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-                HttpRequest.newBuilder(URI.create(GITHUB_RELEASES_ENDPOINT.formatted(owner.name(), name)))
-                    .GET()
-                    .setHeader("Accept", "application/vnd.github+json")
-                    .build()
-            );
-            if (response.statusCode() != OK)
-                return this.releases = Collections.emptyList();
+        public static Repository read(JsonReader reader) throws IOException {
+            User owner = null;
+            String name = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "owner" -> owner = User.read(reader);
+                    case "name" -> name = reader.nextString();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Repository(owner, name);
+        }
 
+        public synchronized List<Release> getReleases() throws IOException, InterruptedException {
+            if (releases != null || loadGraphQL())
+                return releases;
             List<Release> releases = new ArrayList<>();
-            for (JsonElement element : response.body().getAsJsonArray())
-                releases.add(Release.from(this, element.getAsJsonObject()));
+            // a page that fails throws before anything is kept, so a partial list is never taken for all releases
+            try (ReleasePages pages = releasePages()) {
+                List<Release> page;
+                while ((page = pages.next()) != null)
+                    releases.addAll(page);
+            }
             return this.releases = releases;
         }
 
+        public ReleasePages releasePages() {
+            return new ReleasePages(this);
+        }
+
         public Release getLatestRelease() throws IOException, InterruptedException {
+            if (this.releases == null)
+                loadGraphQL();
+            List<Release> releases = this.releases;
             if (releases != null) {
                 for (Release release : releases) {
                     if (!release.draft() && !release.prerelease())
@@ -114,19 +177,55 @@ public class GitHubAPI {
                 }
                 return null;
             }
-            HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-                HttpRequest.newBuilder(URI.create(GITHUB_RELEASES_LATEST_ENDPOINT.formatted(owner.name(), name)))
-                    .GET()
-                    .setHeader("Accept", "application/vnd.github+json")
-                    .build()
-            );
-            if (response.statusCode() != OK)
-                return null;
-            return Release.from(this, response.body().getAsJsonObject());
+            synchronized (latestReleaseLock) {
+                if (latestRelease != null)
+                    return latestRelease;
+                HttpResponse<Release> response = GitHubClient.send(
+                    URI.create(GITHUB_RELEASES_LATEST_ENDPOINT.formatted(owner.name(), name)),
+                    reader -> Release.read(this, reader)
+                );
+                if (response.statusCode() != OK)
+                    return null;
+                return latestRelease = response.body();
+            }
+        }
+
+        public synchronized Release getRelease(String name) throws IOException, InterruptedException {
+            if (releases != null || loadGraphQL())
+                return findRelease(releases, name);
+            try (ReleasePages pages = releasePages()) {
+                List<Release> page;
+                while ((page = pages.next()) != null) {
+                    Release release = findRelease(page, name);
+                    if (release != null)
+                        return release;
+                }
+            }
+            return null;
+        }
+
+        // joins a preload that is already running, false when the releases have to come from REST
+        private boolean loadGraphQL() throws InterruptedException {
+            if (!GitHubGraphQL.ENABLED)
+                return false;
+            GitHubGraphQL.load(List.of(this));
+            try {
+                return graphQL.get().get();
+            } catch (ExecutionException e) {
+                return false;
+            }
         }
 
-        public Release getRelease(String name) throws IOException, InterruptedException {
-            for (Release release : getReleases()) {
+        boolean claimGraphQL(CompletableFuture<Boolean> load) {
+            return graphQL.compareAndSet(null, load);
+        }
+
+        void loaded(List<Release> releases) {
+            this.releases = releases;
+        }
+
+        private static Release findRelease(List<Release> releases, String name) {
+            for (Release release : releases) {
                 if (release.tagName().equals(name))
                     return release;
             }
@@ -169,36 +268,26 @@ public class GitHubAPI {
             this.prerelease = prerelease;
         }
 
-        public List<Asset> getJarAssets() throws IOException, InterruptedException {
+        public synchronized List<Asset> getJarAssets() throws IOException, InterruptedException {
             if (assets != null)
                 return assets;
 
-            HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-                HttpRequest.newBuilder(URI.create(GITHUB_ASSETS_ENDPOINT.formatted(
-                        repository.owner().name(),
-                        repository.name(),
-                        releaseId
-                    )))
-                    .GET()
-                    .setHeader("Accept", "application/vnd.github+json")
-                    .build()
+            HttpResponse<List<Asset>> response = GitHubClient.send(
+                URI.create(GITHUB_ASSETS_ENDPOINT.formatted(repository.owner().name(), repository.name(), releaseId)),
+                JsonBodyHandler.list(reader -> Asset.read(this, reader))
             );
             if (response.statusCode() != OK)
-                throw new IOException("Failed to get release: " + response.body());
-
-            List<Asset> assets = new ArrayList<>();
-            for (JsonElement element : response.body().getAsJsonArray()) {
-                JsonObject object = element.getAsJsonObject();
-                if (object.get("content_type").getAsString().equals("application/java-archive")) {
-                    assets.add(new Asset(
-                        this,
-                        object.get("name").getAsString(),
-                        object.get("content_type").getAsString(),
-                        new URL(object.get("browser_download_url").getAsString())
-                    ));
-                }
+                throw new IOException("Failed to get release: HTTP " + response.statusCode());
+            return this.assets = jarAssets(response.body());
+        }
+
+        private static List<Asset> jarAssets(List<Asset> assets) {
+            List<Asset> jarAssets = new ArrayList<>();
+            for (Asset asset : assets) {
+                if ("application/java-archive".equals(asset.type()))
+                    jarAssets.add(asset);
             }
-            return this.assets = assets;
+            return jarAssets;
         }
 
         public Repository repository() {
@@ -233,7 +322,7 @@ public class GitHubAPI {
             return new Release(
                 repository,
                 object.get("id").getAsInt(),
-                object.get("name").getAsString(),
+                object.get("name").isJsonNull() ? null : object.get("name").getAsString(),
                 object.get("tag_name").getAsString(),
                 object.get("html_url").getAsString(),
                 object.get("draft").getAsBoolean(),
@@ -241,7 +330,193 @@ public class GitHubAPI {
             );
         }
 
-        public record Asset(Release release, String name, String type, URL downloadURL) {}
+        // assets are only attached when all of them fit in the query, otherwise getJarAssets fetches them
+        public static Release fromGraphQL(Repository repository, JsonObject object) throws IOException {
+            Release release = new Release(
+                repository,
+                object.get("databaseId").getAsInt(),
+                object.get("name").isJsonNull() ? null : object.get("name").getAsString(),
+                object.get("tagName").getAsString(),
+                object.get("url").getAsString(),
+                object.get("isDraft").getAsBoolean(),
+                object.get("isPrerelease").getAsBoolean()
+            );
+            JsonObject assets = object.getAsJsonObject("releaseAssets");
+            if (!assets.getAsJsonObject("pageInfo").get("hasNextPage").getAsBoolean()) {
+                List<Asset> list = new ArrayList<>();
+                for (JsonElement asset : assets.getAsJsonArray("nodes"))
+                    list.add(Asset.fromGraphQL(release, asset.getAsJsonObject()));
+                release.assets = jarAssets(list);
+            }
+            return release;
+        }
+
+        public static Release read(Repository repository, JsonReader reader) throws IOException {
+            int releaseId = 0;
+            String name = null, tagName = null, url = null;
+            boolean draft = false, prerelease = false;
+            List<Asset> assets = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id" -> releaseId = reader.nextInt();
+                    case "name" -> name = JsonBodyHandler.nextNullableString(reader);
+                    case "tag_name" -> tagName = reader.nextString();
+                    case "html_url" -> url = reader.nextString();
+                    case "draft" -> draft = reader.nextBoolean();
+                    case "prerelease" -> prerelease = reader.nextBoolean();
+                    case "assets" -> assets = JsonBodyHandler.list(Asset::read).decode(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            Release release = new Release(repository, releaseId, name, tagName, url, draft, prerelease);
+            if (assets != null)
+                release.assets = jarAssets(assets.stream().map(asset -> asset.withRelease(release)).toList());
+            return release;
+        }
+
+        // size is -1 and sha256 null when GitHub didn't say, older assets have no digest
+        public record Asset(Release release, String name, String type, URL downloadURL, long size, String sha256) {
+
+            private static final String SHA256_PREFIX = "sha256:";
+
+            public Asset withRelease(Release release) {
+                return new Asset(release, name, type, downloadURL, size, sha256);
+            }
+
+            public static Asset fromGraphQL(Release release, JsonObject object) throws IOException {
+                return new Asset(
+                    release,
+                    object.get("name").getAsString(),
+                    object.get("contentType").getAsString(),
+                    new URL(object.get("downloadUrl").getAsString()),
+                    object.has("size") ? object.get("size").getAsLong() : -1,
+                    null
+                );
+            }
+
+            public static Asset read(JsonReader reader) throws IOException {
+                return read(null, reader);
+            }
+
+            public static Asset read(Release release, JsonReader reader) throws IOException {
+                String name = null, type = null, sha256 = null;
+                URL downloadURL = null;
+                long size = -1;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "name" -> name = reader.nextString();
+                        case "content_type" -> type = reader.nextString();
+                        case "browser_download_url" -> downloadURL = new URL(reader.nextString());
+                        case "size" -> size = reader.nextLong();
+                        case "digest" -> {
+                            String digest = JsonBodyHandler.nextNullableString(reader);
+                            if (digest != null && digest.startsWith(SHA256_PREFIX))
+                                sha256 = digest.substring(SHA256_PREFIX.length());
+                        }
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return new Asset(release, name, type, downloadURL, size, sha256);
+            }
+
+        }
+
+    }
+
+    public static class ReleasePages implements AutoCloseable {
+
+        private final Repository repository;
+        private final Deque<CompletableFuture<HttpResponse<List<Release>>>> inFlight = new ArrayDeque<>();
+        private URI next;
+        private int lastPage, nextPage = 1;
+        private boolean first = true;
+
+        private ReleasePages(Repository repository) {
+            this.repository = repository;
+            this.next = pageURI(1);
+        }
+
+        public List<Release> next() throws IOException, InterruptedException {
+            HttpResponse<List<Release>> response;
+            if (!inFlight.isEmpty()) {
+                response = await(inFlight.poll());
+            } else if (next != null) {
+                response = GitHubClient.send(next, decoder());
+                next = null;
+                readLinks(response);
+            } else {
+                return null;
+            }
+            fill();
+            boolean first = this.first;
+            this.first = false;
+            if (response.statusCode() != OK) {
+                close();
+                // only a repository that isn't there has no pages, a failed page must not pass for the end of the list
+                if (first && response.statusCode() == NOT_FOUND)
+                    return null;
+                throw new IOException("Failed to load the releases of " + repository.getFullName() + ": HTTP " + response.statusCode());
+            }
+            return response.body();
+        }
+
+        private void readLinks(HttpResponse<?> response) {
+            for (String header : response.headers().allValues("Link")) {
+                Matcher matcher = LINK_PATTERN.matcher(header);
+                while (matcher.find()) {
+                    switch (matcher.group(2)) {
+                        case "next" -> next = URI.create(matcher.group(1));
+                        case "last" -> {
+                            Matcher page = PAGE_PATTERN.matcher(matcher.group(1));
+                            if (page.find())
+                                lastPage = Integer.parseInt(page.group(1));
+                        }
+                    }
+                }
+            }
+            if (lastPage > 0) {
+                next = null;
+                nextPage = 2;
+            }
+        }
+
+        private void fill() {
+            while (lastPage > 0 && nextPage <= lastPage && inFlight.size() < PAGE_PREFETCH)
+                inFlight.add(GitHubClient.sendAsync(pageURI(nextPage++), decoder()));
+        }
+
+        private URI pageURI(int page) {
+            return URI.create(GITHUB_RELEASES_PAGE_ENDPOINT.formatted(repository.owner().name(), repository.name(), PAGE_SIZE, page));
+        }
+
+        private JsonBodyHandler.Decoder<List<Release>> decoder() {
+            return JsonBodyHandler.list(reader -> Release.read(repository, reader));
+        }
+
+        private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException exception)
+                    throw exception.getCause();
+                if (e.getCause() instanceof IOException exception)
+                    throw exception;
+                throw new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        public void close() {
+            lastPage = 0;
+            next = null;
+            CompletableFuture<?> future;
+            while ((future = inFlight.poll()) != null)
+                future.cancel(true);
+        }
 
     }
 
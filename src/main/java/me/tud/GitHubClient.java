@@ -0,0 +1,238 @@
+package me.tud;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class GitHubClient {
+
+    private static final String TOKEN = token();
+    private static final Duration MAX_WAIT = Duration.ofSeconds(Long.getLong("wizard.github.maxWait", 120));
+    private static final Duration SECONDARY_BACKOFF = Duration.ofSeconds(60);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("wizard.github.maxAttempts", 3);
+    // below this many requests left in the window, sends are spread evenly until the reset
+    private static final int LOW_WATERMARK = Integer.getInteger("wizard.github.lowWatermark", 10);
+
+    private static final int FORBIDDEN = 403;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final Map<URI, CompletableFuture<HttpResponse<?>>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final Map<String, Budget> BUDGETS = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(null, runnable, "github-worker", 0, false);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private GitHubClient() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static boolean authenticated() {
+        return TOKEN != null;
+    }
+
+    public static HttpRequest request(URI uri) {
+        return builder(uri).GET().build();
+    }
+
+    private static HttpRequest.Builder builder(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+            .setHeader("Accept", "application/vnd.github+json");
+        if (TOKEN != null)
+            builder.setHeader("Authorization", "Bearer " + TOKEN);
+        return builder;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> HttpResponse<T> send(URI uri, JsonBodyHandler.Decoder<T> decoder) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<?>> future = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<?>> existing = IN_FLIGHT.putIfAbsent(uri, future);
+        if (existing != null)
+            return (HttpResponse<T>) await(existing);
+        try {
+            HttpResponse<T> response = sendWithinBudget(request(uri), decoder);
+            future.complete(response);
+            return response;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(uri, future);
+        }
+    }
+
+    // GraphQL queries are POSTs, so they aren't shared in flight the way GETs of the same URI are
+    public static <T> HttpResponse<T> query(URI uri, String body, JsonBodyHandler.Decoder<T> decoder) throws IOException, InterruptedException {
+        HttpRequest request = builder(uri)
+            .setHeader("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return sendWithinBudget(request, decoder);
+    }
+
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(URI uri, JsonBodyHandler.Decoder<T> decoder) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(uri, decoder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    private static <T> HttpResponse<T> sendWithinBudget(HttpRequest request, JsonBodyHandler.Decoder<T> decoder) throws IOException, InterruptedException {
+        URI uri = request.uri();
+        Budget budget = BUDGETS.computeIfAbsent(resource(uri), Budget::new);
+        HttpCache.Entry entry = HttpCache.isCacheable(request) ? HttpCache.lookup(uri) : null;
+        boolean cached = entry != null && entry.fresh();
+        for (int attempt = 1; ; attempt++) {
+            if (!cached)
+                budget.acquire();
+            // retries and hedges below this call pass through the budget as well
+            HttpResponse<T> response = HttpUtils.sendRequest(request, decoder, budget);
+            budget.update(response.headers(), System.currentTimeMillis());
+            if (!rateLimited(response))
+                return response;
+            budget.limited(response.headers(), attempt, System.currentTimeMillis());
+            if (attempt >= MAX_ATTEMPTS)
+                throw budget.exhausted();
+            cached = false;
+        }
+    }
+
+    private static boolean rateLimited(HttpResponse<?> response) {
+        if (response.statusCode() == TOO_MANY_REQUESTS)
+            return true;
+        return response.statusCode() == FORBIDDEN
+            && (RequestPolicy.retryAfter(response.headers(), System.currentTimeMillis()) >= 0
+                || response.headers().firstValueAsLong("X-RateLimit-Remaining").orElse(-1) == 0);
+    }
+
+    private static String resource(URI uri) {
+        if (uri.getPath().endsWith("/graphql"))
+            return "graphql";
+        return uri.getPath().startsWith("/search/") ? "search" : "core";
+    }
+
+    private static HttpResponse<?> await(CompletableFuture<HttpResponse<?>> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException exception)
+                throw exception;
+            if (e.getCause() instanceof InterruptedException)
+                throw new IOException("The shared GitHub request was interrupted", e.getCause());
+            if (e.getCause() instanceof RuntimeException exception)
+                throw exception;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static String token() {
+        String token = System.getenv("GITHUB_TOKEN");
+        if (token == null || token.isBlank())
+            token = System.getenv("GH_TOKEN");
+        return token == null || token.isBlank() ? null : token.trim();
+    }
+
+    static final class Budget implements RequestPolicy.Gate {
+
+        private final String resource;
+        private long remaining = -1, reset;
+        private long blockedUntil, nextSlot;
+
+        Budget(String resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public void acquire() throws IOException, InterruptedException {
+            long wait = reserve(System.currentTimeMillis());
+            if (wait > MAX_WAIT.toMillis())
+                throw exhausted();
+            if (wait > 0)
+                Thread.sleep(wait);
+        }
+
+        @Override
+        public void observe(HttpHeaders headers) {
+            update(headers, System.currentTimeMillis());
+        }
+
+        synchronized long reserve(long now) {
+            long start = Math.max(now, blockedUntil);
+            if (remaining < 0 || reset * 1000 <= start) {
+                remaining = -1;
+                return start - now;
+            }
+            if (remaining == 0)
+                return reset * 1000 - now;
+            if (remaining < LOW_WATERMARK) {
+                start = Math.max(start, nextSlot);
+                nextSlot = start + (reset * 1000 - start) / remaining;
+            }
+            remaining--;
+            return start - now;
+        }
+
+        // responses served from the http cache carry old headers, so only a newer window or a lower count is taken
+        synchronized void update(HttpHeaders headers, long now) {
+            OptionalLong remaining = headers.firstValueAsLong("X-RateLimit-Remaining");
+            OptionalLong reset = headers.firstValueAsLong("X-RateLimit-Reset");
+            if (remaining.isEmpty() || reset.isEmpty() || reset.getAsLong() * 1000 <= now)
+                return;
+            if (reset.getAsLong() > this.reset) {
+                this.reset = reset.getAsLong();
+                this.remaining = remaining.getAsLong();
+                this.nextSlot = 0;
+            } else if (reset.getAsLong() == this.reset) {
+                this.remaining = this.remaining < 0 ? remaining.getAsLong() : Math.min(this.remaining, remaining.getAsLong());
+            }
+        }
+
+        synchronized void limited(HttpHeaders headers, int attempt, long now) {
+            long retryAfter = RequestPolicy.retryAfter(headers, now);
+            if (retryAfter >= 0) {
+                blockedUntil = Math.max(blockedUntil, now + retryAfter);
+            } else if (headers.firstValueAsLong("X-RateLimit-Remaining").orElse(-1) == 0) {
+                remaining = 0;
+            } else {
+                blockedUntil = Math.max(blockedUntil, now + SECONDARY_BACKOFF.toMillis() * attempt);
+            }
+        }
+
+        synchronized IOException exhausted() {
+            long until = Math.max(blockedUntil, remaining == 0 ? reset * 1000 : 0);
+            String message = "GitHub API rate limit for '" + resource + "' exhausted";
+            if (until > System.currentTimeMillis()) {
+                LocalTime time = LocalTime.ofInstant(Instant.ofEpochMilli(until), ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS);
+                message += ", try again after " + time;
+            }
+            if (!authenticated())
+                message += " (set GITHUB_TOKEN to raise the limit)";
+            return new IOException(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+package me.tud;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// fetches the releases of several repositories together with their assets in one query, only with a token since GraphQL requires one
+public final class GitHubGraphQL {
+
+    static final URI ENDPOINT = URI.create(System.getProperty("wizard.github.graphql.endpoint", GitHubAPI.GITHUB_ENDPOINT + "/graphql"));
+    static final boolean ENABLED = GitHubClient.authenticated() && Boolean.parseBoolean(System.getProperty("wizard.github.graphql", "true"));
+    private static final int BATCH_SIZE = Integer.getInteger("wizard.github.graphql.batchSize", 10);
+    private static final int RELEASES_PER_PAGE = 100;
+    private static final int ASSETS_PER_RELEASE = 25;
+
+    private static final int OK = 200;
+    private static final String RELEASES_FIELDS = """
+        releases(first: %d, after: $after%d, orderBy: {field: CREATED_AT, direction: DESC}) {
+          pageInfo { hasNextPage endCursor }
+          nodes {
+            databaseId name tagName url isDraft isPrerelease
+            releaseAssets(first: %d) { pageInfo { hasNextPage } nodes { name contentType downloadUrl size } }
+          }
+        }""";
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(null, runnable, "graphql-worker", 0, false);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private GitHubGraphQL() {
+        throw new UnsupportedOperationException();
+    }
+
+    // starts loading every repository that isn't loading yet, each repository completes its own future with whether it was loaded
+    static void load(Collection<GitHubAPI.Repository> repositories) {
+        if (!ENABLED)
+            return;
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = new LinkedHashMap<>();
+        for (GitHubAPI.Repository repository : repositories) {
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            if (repository.claimGraphQL(future))
+                batch.put(repository, future);
+            if (batch.size() == BATCH_SIZE) {
+                submit(batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty())
+            submit(batch);
+    }
+
+    private static void submit(Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch) {
+        SetupReport report = Metrics.current();
+        EXECUTOR.execute(() -> {
+            try (Metrics.Scope ignored = Metrics.bind(report)) {
+                fetch(ENDPOINT, batch);
+            }
+        });
+    }
+
+    // completes every future of the batch, with false for the repositories left to REST
+    static void fetch(URI endpoint, Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch) {
+        try {
+            run(endpoint, batch);
+        } catch (IOException | RuntimeException e) {
+            // whatever wasn't loaded falls back to the REST endpoints
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            batch.values().forEach(future -> future.complete(false));
+        }
+    }
+
+    // repositories with more releases than fit in one page stay in the next query with their cursor
+    private static void run(URI endpoint, Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch) throws IOException, InterruptedException {
+        Map<GitHubAPI.Repository, String> cursors = new LinkedHashMap<>();
+        Map<GitHubAPI.Repository, List<GitHubAPI.Release>> releases = new HashMap<>();
+        for (GitHubAPI.Repository repository : batch.keySet()) {
+            cursors.put(repository, null);
+            releases.put(repository, new ArrayList<>());
+        }
+        while (!cursors.isEmpty()) {
+            List<GitHubAPI.Repository> pending = new ArrayList<>(cursors.keySet());
+            JsonObject response = query(endpoint, pending, cursors);
+            JsonObject data = response.has("data") && response.get("data").isJsonObject() ? response.getAsJsonObject("data") : null;
+            if (data == null)
+                throw new IOException("GraphQL query failed: " + response.get("errors"));
+            for (int i = 0; i < pending.size(); i++) {
+                GitHubAPI.Repository repository = pending.get(i);
+                JsonElement element = data.get("r" + i);
+                if (element == null || element.isJsonNull()) {
+                    cursors.remove(repository);
+                    // a missing repository has no releases, anything else is left to REST
+                    if (notFound(response, "r" + i))
+                        complete(batch, repository, List.of());
+                    continue;
+                }
+                JsonObject page = element.getAsJsonObject().getAsJsonObject("releases");
+                for (JsonElement node : page.getAsJsonArray("nodes"))
+                    releases.get(repository).add(GitHubAPI.Release.fromGraphQL(repository, node.getAsJsonObject()));
+                JsonObject pageInfo = page.getAsJsonObject("pageInfo");
+                if (pageInfo.get("hasNextPage").getAsBoolean()) {
+                    cursors.put(repository, pageInfo.get("endCursor").getAsString());
+                } else {
+                    cursors.remove(repository);
+                    complete(batch, repository, releases.get(repository));
+                }
+            }
+        }
+    }
+
+    private static void complete(Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch, GitHubAPI.Repository repository, List<GitHubAPI.Release> releases) {
+        repository.loaded(releases);
+        batch.get(repository).complete(true);
+    }
+
+    private static JsonObject query(URI endpoint, List<GitHubAPI.Repository> repositories, Map<GitHubAPI.Repository, String> cursors) throws IOException, InterruptedException {
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder fields = new StringBuilder();
+        JsonObject variables = new JsonObject();
+        for (int i = 0; i < repositories.size(); i++) {
+            GitHubAPI.Repository repository = repositories.get(i);
+            if (i > 0)
+                parameters.append(", ");
+            parameters.append("$owner").append(i).append(": String!, $name").append(i).append(": String!, $after").append(i).append(": String");
+            fields.append("r").append(i).append(": repository(owner: $owner").append(i).append(", name: $name").append(i).append(") {\n")
+                .append(RELEASES_FIELDS.formatted(RELEASES_PER_PAGE, i, ASSETS_PER_RELEASE)).append("\n}\n");
+            variables.addProperty("owner" + i, repository.owner().name());
+            variables.addProperty("name" + i, repository.name());
+            variables.addProperty("after" + i, cursors.get(repository));
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("query", "query(" + parameters + ") {\n" + fields + "}");
+        body.add("variables", variables);
+
+        HttpResponse<JsonElement> response = GitHubClient.query(endpoint, body.toString(), JsonBodyHandler.TREE);
+        if (response.statusCode() != OK)
+            throw new IOException("GraphQL query failed: HTTP " + response.statusCode());
+        if (!response.body().isJsonObject())
+            throw new IOException("GraphQL query failed: unexpected response " + response.body());
+        return response.body().getAsJsonObject();
+    }
+
+    private static boolean notFound(JsonObject response, String alias) {
+        if (!response.has("errors") || !response.get("errors").isJsonArray())
+            return false;
+        for (JsonElement element : response.getAsJsonArray("errors")) {
+            JsonObject error = element.getAsJsonObject();
+            JsonArray path = error.has("path") ? error.getAsJsonArray("path") : null;
+            if (error.has("type") && error.get("type").getAsString().equals("NOT_FOUND")
+                && path != null && !path.isEmpty() && path.get(0).getAsString().equals(alias))
+                return true;
+        }
+        return false;
+    }
+
+}
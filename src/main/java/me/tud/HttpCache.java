@@ -0,0 +1,304 @@
+package me.tud;
+
+import com.google.gson.Gson;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+public final class HttpCache {
+
+    private static final Path FOLDER = Main.DATA_FOLDER.resolve("cache").resolve("http");
+    private static final Duration TTL = Duration.ofSeconds(Long.getLong("wizard.cache.ttl", 600));
+    private static final long MAX_SIZE = Long.getLong("wizard.cache.maxSize", 32L * 1024 * 1024);
+    private static final String BODY_EXTENSION = ".json";
+    private static final String METADATA_EXTENSION = ".meta";
+    private static final Gson GSON = new Gson();
+
+    public static final int NOT_MODIFIED = 304;
+
+    // while set, fresh entries are revalidated anyway, e.g. when checking a server for updates
+    private static final InheritableThreadLocal<Boolean> REVALIDATE = new InheritableThreadLocal<>();
+
+    private HttpCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static Scope revalidate() {
+        Boolean previous = REVALIDATE.get();
+        REVALIDATE.set(true);
+        return () -> {
+            if (previous == null) REVALIDATE.remove();
+            else REVALIDATE.set(previous);
+        };
+    }
+
+    public static boolean revalidating() {
+        return REVALIDATE.get() != null;
+    }
+
+    public static boolean isCacheable(HttpRequest request) {
+        return request.method().equals("GET");
+    }
+
+    public static Entry lookup(URI uri) {
+        String key = key(uri);
+        Path metadataFile = FOLDER.resolve(key + METADATA_EXTENSION);
+        Path bodyFile = FOLDER.resolve(key + BODY_EXTENSION);
+        if (!Files.exists(metadataFile) || !Files.exists(bodyFile))
+            return null;
+        try {
+            Metadata metadata = GSON.fromJson(Files.readString(metadataFile), Metadata.class);
+            if (metadata == null || !uri.toString().equals(metadata.uri()))
+                return null;
+            Files.setLastModifiedTime(metadataFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(key, metadata, bodyFile);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static HttpRequest conditional(HttpRequest request, Entry entry) {
+        if (entry == null)
+            return request;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true);
+        entry.header("ETag").ifPresent(etag -> builder.setHeader("If-None-Match", etag));
+        entry.header("Last-Modified").ifPresent(lastModified -> builder.setHeader("If-Modified-Since", lastModified));
+        return builder.build();
+    }
+
+    public static InputStream store(HttpRequest request, HttpHeaders headers, InputStream body) {
+        try {
+            Files.createDirectories(FOLDER);
+            Path temp = Files.createTempFile(FOLDER, key(request.uri()), ".tmp");
+            return new CachingInputStream(body, temp, request.uri(), headers);
+        } catch (IOException e) {
+            return body;
+        }
+    }
+
+    private static void commit(Path temp, URI uri, HttpHeaders headers) throws IOException {
+        String key = key(uri);
+        Metadata metadata = new Metadata(uri.toString(), System.currentTimeMillis(), headers.map());
+        Files.move(temp, FOLDER.resolve(key + BODY_EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        write(FOLDER.resolve(key + METADATA_EXTENSION), GSON.toJson(metadata));
+        evict();
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Path temp = Files.createTempFile(FOLDER, file.getFileName().toString(), ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static synchronized void evict() throws IOException {
+        List<Path> metadataFiles;
+        try (Stream<Path> stream = Files.list(FOLDER)) {
+            metadataFiles = new ArrayList<>(stream
+                .filter(path -> path.getFileName().toString().endsWith(METADATA_EXTENSION))
+                .toList());
+        }
+        long size = 0;
+        for (Path metadataFile : metadataFiles)
+            size += entrySize(metadataFile);
+        if (size <= MAX_SIZE)
+            return;
+
+        metadataFiles.sort(Comparator.comparing(HttpCache::lastAccess));
+        for (Path metadataFile : metadataFiles) {
+            if (size <= MAX_SIZE)
+                break;
+            size -= entrySize(metadataFile);
+            Files.deleteIfExists(bodyFile(metadataFile));
+            Files.deleteIfExists(metadataFile);
+        }
+    }
+
+    private static long entrySize(Path metadataFile) {
+        try {
+            Path bodyFile = bodyFile(metadataFile);
+            return Files.size(metadataFile) + (Files.exists(bodyFile) ? Files.size(bodyFile) : 0);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastAccess(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static Path bodyFile(Path metadataFile) {
+        String name = metadataFile.getFileName().toString();
+        return metadataFile.resolveSibling(name.substring(0, name.length() - METADATA_EXTENSION.length()) + BODY_EXTENSION);
+    }
+
+    static String key(URI uri) {
+        return HexFormat.of().formatHex(JarStore.sha256().digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private record Metadata(String uri, long storedAt, Map<String, List<String>> headers) {}
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+    public static final class Entry {
+
+        private final String key;
+        private final Path bodyFile;
+        private Metadata metadata;
+
+        private Entry(String key, Metadata metadata, Path bodyFile) {
+            this.key = key;
+            this.metadata = metadata;
+            this.bodyFile = bodyFile;
+        }
+
+        public boolean fresh() {
+            return !revalidating() && System.currentTimeMillis() - metadata.storedAt() < TTL.toMillis();
+        }
+
+        public Optional<String> header(String name) {
+            return headers().firstValue(name);
+        }
+
+        public HttpHeaders headers() {
+            return HttpHeaders.of(metadata.headers(), (name, value) -> true);
+        }
+
+        // a body that no longer decodes, e.g. truncated by a crash, takes the entry with it
+        public <T> HttpResponse<T> decode(HttpRequest request, JsonBodyHandler.Decoder<T> decoder) throws IOException {
+            try (InputStream input = Files.newInputStream(bodyFile)) {
+                T body = JsonBodyHandler.decode(input, decoder);
+                return new JsonResponse<>(request, 200, headers(), request.uri(), HttpClient.Version.HTTP_1_1, body);
+            } catch (IOException | RuntimeException e) {
+                delete();
+                throw new CorruptEntryException("Cached response of " + metadata.uri() + " is corrupt", e);
+            }
+        }
+
+        // a 304 carries the current validators and rate limit, the rest of the stored headers still apply
+        public void revalidated(HttpHeaders response) throws IOException {
+            Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headers.putAll(metadata.headers());
+            response.map().forEach((name, values) -> {
+                String lower = name.toLowerCase(Locale.ROOT);
+                if (lower.equals("etag") || lower.equals("last-modified") || lower.startsWith("x-ratelimit-"))
+                    headers.put(name, values);
+            });
+            metadata = new Metadata(metadata.uri(), System.currentTimeMillis(), headers);
+            write(FOLDER.resolve(key + METADATA_EXTENSION), GSON.toJson(metadata));
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(bodyFile);
+                Files.deleteIfExists(FOLDER.resolve(key + METADATA_EXTENSION));
+            } catch (IOException ignored) {}
+        }
+
+    }
+
+    public static final class CorruptEntryException extends IOException {
+
+        private CorruptEntryException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+    }
+
+    private static final class CachingInputStream extends FilterInputStream {
+
+        private final Path temp;
+        private final URI uri;
+        private final HttpHeaders headers;
+        private final OutputStream output;
+        private boolean complete, failed;
+
+        private CachingInputStream(InputStream input, Path temp, URI uri, HttpHeaders headers) throws IOException {
+            super(input);
+            this.temp = temp;
+            this.uri = uri;
+            this.headers = headers;
+            this.output = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) complete = true;
+            else copy(new byte[]{(byte) read}, 0, 1);
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) complete = true;
+            else copy(buffer, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            failed = true;
+            return super.skip(n);
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (failed)
+                return;
+            try {
+                output.write(buffer, offset, length);
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                output.close();
+                try {
+                    if (complete && !failed) commit(temp, uri, headers);
+                } catch (IOException ignored) {
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+
+    }
+
+}
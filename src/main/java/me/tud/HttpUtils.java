@@ -1,17 +1,146 @@
 package me.tud;
 
-import com.google.gson.JsonElement;
-
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HttpUtils {
 
-    public static HttpResponse<JsonElement> sendRequest(HttpRequest request) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newHttpClient();
-        return client.send(request, new JsonBodyHandler());
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(Integer.getInteger("wizard.http.connectTimeout", 10));
+    private static final int OK = 200;
+
+    // pooled threads must not inherit the setup report of whichever thread happened to spawn them
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(null, runnable, "http-worker", 0, false);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final HttpClient CLIENT = newClientBuilder().executor(EXECUTOR).build();
+
+    private HttpUtils() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static HttpClient.Builder newClientBuilder() {
+        return HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT);
+    }
+
+    public static HttpClient client() {
+        return CLIENT;
+    }
+
+    public static <T> HttpResponse<T> sendRequest(HttpRequest request, JsonBodyHandler.Decoder<T> decoder) throws IOException, InterruptedException {
+        return sendRequest(request, decoder, RequestPolicy.Gate.NONE);
+    }
+
+    public static <T> HttpResponse<T> sendRequest(HttpRequest request, JsonBodyHandler.Decoder<T> decoder, RequestPolicy.Gate gate) throws IOException, InterruptedException {
+        SetupReport report = Metrics.current();
+        long start = System.nanoTime();
+        HttpCache.Entry entry = HttpCache.isCacheable(request) ? HttpCache.lookup(request.uri()) : null;
+        if (entry != null && entry.fresh()) {
+            try {
+                return cached(report, request, entry, decoder, start);
+            } catch (HttpCache.CorruptEntryException e) {
+                entry = null;
+            }
+        }
+        try {
+            return fetch(report, request, entry, decoder, gate, start);
+        } catch (HttpCache.CorruptEntryException e) {
+            // the server confirmed a body that is gone now, so ask again without the validators
+            return fetch(report, request, null, decoder, gate, start);
+        }
+    }
+
+    public static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, JsonBodyHandler.Decoder<T> decoder) {
+        SetupReport report = Metrics.current();
+        return CompletableFuture.supplyAsync(() -> {
+            try (Metrics.Scope ignored = Metrics.bind(report)) {
+                return sendRequest(request, decoder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    private static <T> HttpResponse<T> fetch(
+        SetupReport report,
+        HttpRequest request,
+        HttpCache.Entry entry,
+        JsonBodyHandler.Decoder<T> decoder,
+        RequestPolicy.Gate gate,
+        long start
+    ) throws IOException, InterruptedException {
+        boolean[] responded = {false};
+        try {
+            return RequestPolicy.of(request.uri()).send(CLIENT, HttpCache.conditional(request, entry), response -> {
+                responded[0] = true;
+                return decode(report, request, entry, response, decoder, start);
+            }, gate);
+        } catch (IOException e) {
+            if (!responded[0])
+                Metrics.request(report, request.method(), request.uri(), 0, 0, cache(request, entry, 0), start);
+            throw e;
+        }
+    }
+
+    private static <T> HttpResponse<T> cached(
+        SetupReport report,
+        HttpRequest request,
+        HttpCache.Entry entry,
+        JsonBodyHandler.Decoder<T> decoder,
+        long start
+    ) throws IOException {
+        HttpResponse<T> response = entry.decode(request, decoder);
+        Metrics.request(report, request.method(), request.uri(), response.statusCode(), 0, Metrics.Cache.HIT, start);
+        return response;
+    }
+
+    private static <T> HttpResponse<T> decode(
+        SetupReport report,
+        HttpRequest request,
+        HttpCache.Entry entry,
+        HttpResponse<InputStream> response,
+        JsonBodyHandler.Decoder<T> decoder,
+        long start
+    ) throws IOException {
+        Metrics.CountingInputStream body = new Metrics.CountingInputStream(response.body());
+        try (body) {
+            if (response.statusCode() == HttpCache.NOT_MODIFIED && entry != null) {
+                entry.revalidated(response.headers());
+                return entry.decode(request, decoder);
+            }
+            if (response.statusCode() != OK)
+                return new JsonResponse<>(response, null);
+            try (InputStream input = HttpCache.isCacheable(request) ? HttpCache.store(request, response.headers(), body) : body) {
+                T value = JsonBodyHandler.decode(input, decoder);
+                input.transferTo(OutputStream.nullOutputStream());
+                return new JsonResponse<>(response, value);
+            }
+        } finally {
+            Metrics.request(report, request.method(), request.uri(), response.statusCode(), body.count(), cache(request, entry, response.statusCode()), start);
+        }
+    }
+
+    private static Metrics.Cache cache(HttpRequest request, HttpCache.Entry entry, int status) {
+        if (!HttpCache.isCacheable(request))
+            return Metrics.Cache.BYPASS;
+        return status == HttpCache.NOT_MODIFIED && entry != null ? Metrics.Cache.REVALIDATED : Metrics.Cache.MISS;
     }
 
 }
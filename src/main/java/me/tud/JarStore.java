@@ -0,0 +1,246 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+public final class JarStore {
+
+    private static final Path FOLDER = Main.DATA_FOLDER.resolve("store");
+    private static final Path OBJECTS_FOLDER = FOLDER.resolve("objects");
+    private static final Path TEMP_FOLDER = FOLDER.resolve("tmp");
+    private static final Path INDEX_FILE = FOLDER.resolve("index.json");
+    private static final Gson GSON = new Gson();
+
+    private static final Map<String, CompletableFuture<Path>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static Map<String, String> index;
+
+    private JarStore() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void install(URL url, Path target) throws IOException, InterruptedException {
+        install(url, target, null, null);
+    }
+
+    public static void install(URL url, Path target, String sha256, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        install(url, target, sha256, -1, handler);
+    }
+
+    // the handler sees the jar's entries, while it downloads if this call is the one fetching it
+    // a non-null sha256 pins the content and a size of zero or more is checked as well, a download not matching them fails
+    public static void install(URL url, Path target, String sha256, long size, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        link(fetch(url, sha256, size, handler), target);
+    }
+
+    public static Path fetch(URL url) throws IOException, InterruptedException {
+        return fetch(url, null, -1, null);
+    }
+
+    public static Path fetch(URL url, String sha256) throws IOException, InterruptedException {
+        return fetch(url, sha256, -1, null);
+    }
+
+    public static Path fetch(URL url, String sha256, long size) throws IOException, InterruptedException {
+        return fetch(url, sha256, size, null);
+    }
+
+    private static Path fetch(URL url, String sha256, long size, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        if (sha256 != null) {
+            // pinned content is found by hash, whichever url put it in the store
+            Path pinned = object(sha256);
+            if (Files.exists(pinned))
+                return scanned(pinned, handler);
+        }
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        while (true) {
+            Path cached = lookup(url);
+            if (cached != null && (sha256 == null || objectHash(cached).equals(sha256)) && (size < 0 || Files.size(cached) == size))
+                return scanned(cached, handler);
+            CompletableFuture<Path> existing = IN_FLIGHT.putIfAbsent(url.toString(), future);
+            if (existing == null)
+                break;
+            Path object;
+            try {
+                object = await(existing);
+            } catch (IOException ignored) {
+                // the download we joined failed or its owner was cancelled, e.g. a speculative prefetch
+                // or another server's setup, neither of which is our failure, so try it ourselves
+                continue;
+            }
+            return scanned(verified(url, object, objectHash(object), sha256, size), handler);
+        }
+        try {
+            Path object = download(url, sha256, size, handler);
+            future.complete(object);
+            return object;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(url.toString(), future);
+        }
+    }
+
+    public static Path lookup(URL url) throws IOException {
+        String hash;
+        synchronized (JarStore.class) {
+            hash = index().get(url.toString());
+        }
+        if (hash == null)
+            return null;
+        Path object = object(hash);
+        return Files.exists(object) ? object : null;
+    }
+
+    public static Path object(String hash) {
+        return OBJECTS_FOLDER.resolve(hash.substring(0, 2)).resolve(hash + ".jar");
+    }
+
+    // the sha256 of the cached download, or null if it isn't in the store
+    public static String digest(URL url) throws IOException {
+        Path object = lookup(url);
+        return object != null ? objectHash(object) : null;
+    }
+
+    public static String objectHash(Path object) {
+        String name = object.getFileName().toString();
+        return name.substring(0, name.length() - ".jar".length());
+    }
+
+    public static boolean matches(Path file, String hash) throws IOException {
+        if (hash == null || !Files.isRegularFile(file))
+            return false;
+        if (hash(file).equals(hash))
+            return true;
+        // the file was written through its hard link, so the store copy is damaged too and has to be fetched again
+        Path object = object(hash);
+        if (Files.exists(object) && Files.isSameFile(file, object))
+            Files.delete(object);
+        return false;
+    }
+
+    // links next to the target first and renames over it, so readers see either the old or the new jar
+    public static void replace(Path object, Path target) throws IOException {
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            link(object, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static void link(Path object, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, object);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(object, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Path verified(URL url, Path file, String actual, String sha256, long size) throws IOException {
+        if (size >= 0 && Files.size(file) != size)
+            throw new IOException("Size mismatch for " + url + ": expected " + size + " bytes but got " + Files.size(file));
+        if (sha256 != null && !actual.equals(sha256))
+            throw new IOException("Checksum mismatch for " + url + ": expected sha256 " + sha256 + " but got " + actual);
+        return file;
+    }
+
+    private static Path scanned(Path object, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        if (handler != null)
+            ZipStream.scan(object, handler);
+        return object;
+    }
+
+    // the download is checked while it's still a temp file, so nothing unverified ever reaches the store
+    private static Path download(URL url, String sha256, long size, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        Files.createDirectories(TEMP_FOLDER);
+        Path temp = TEMP_FOLDER.resolve(hash(url.toString().getBytes(StandardCharsets.UTF_8)) + ".jar");
+        try {
+            String hash = Downloader.download(url, temp, handler);
+            verified(url, temp, hash, sha256, size);
+            Path object = object(hash);
+            Files.createDirectories(object.getParent());
+            try {
+                Files.move(temp, object, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException ignored) {}
+            record(url, hash);
+            return object;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String hash(byte[] bytes) {
+        return HexFormat.of().formatHex(sha256().digest(bytes));
+    }
+
+    // an interrupt only propagates when it's this thread's own, the owner being interrupted is just another failure
+    private static Path await(CompletableFuture<Path> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException exception)
+                throw exception;
+            if (e.getCause() instanceof InterruptedException exception) {
+                if (Thread.currentThread().isInterrupted())
+                    throw exception;
+                throw new IOException("The download this one joined was interrupted", exception);
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static synchronized void record(URL url, String hash) throws IOException {
+        index().put(url.toString(), hash);
+        Path temp = Files.createTempFile(FOLDER, "index", ".tmp");
+        Files.writeString(temp, GSON.toJson(index), StandardCharsets.UTF_8);
+        Files.move(temp, INDEX_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static synchronized Map<String, String> index() throws IOException {
+        if (index != null)
+            return index;
+        Map<String, String> index = null;
+        if (Files.exists(INDEX_FILE))
+            index = GSON.fromJson(Files.readString(INDEX_FILE, StandardCharsets.UTF_8), new TypeToken<Map<String, String>>() {}.getType());
+        return JarStore.index = index != null ? index : new HashMap<>();
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -2,16 +2,55 @@ package me.tud;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.net.http.HttpResponse;
-import java.nio.charset.Charset;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
-public class JsonBodyHandler implements HttpResponse.BodyHandler<JsonElement> {
+// streaming decoders for response bodies, the json is read token by token instead of into a tree first
+public final class JsonBodyHandler {
+
+    public static final Decoder<JsonElement> TREE = JsonParser::parseReader;
+
+    private JsonBodyHandler() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static <T> T decode(InputStream input, Decoder<T> decoder) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+        return decoder.decode(reader);
+    }
+
+    public static <T> Decoder<List<T>> list(Decoder<T> decoder) {
+        return reader -> {
+            List<T> list = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext())
+                list.add(decoder.decode(reader));
+            reader.endArray();
+            return list;
+        };
+    }
+
+    public static String nextNullableString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    @FunctionalInterface
+    public interface Decoder<T> {
+
+        T decode(JsonReader reader) throws IOException;
 
-    @Override
-    public HttpResponse.BodySubscriber<JsonElement> apply(HttpResponse.ResponseInfo responseInfo) {
-        HttpResponse.BodySubscriber<String> upstream = HttpResponse.BodySubscribers.ofString(Charset.defaultCharset());
-        return HttpResponse.BodySubscribers.mapping(upstream, JsonParser::parseString);
     }
 
 }
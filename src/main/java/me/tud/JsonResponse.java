@@ -0,0 +1,34 @@
+package me.tud;
+
+import javax.net.ssl.SSLSession;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+record JsonResponse<T>(
+    HttpRequest request,
+    int statusCode,
+    HttpHeaders headers,
+    URI uri,
+    HttpClient.Version version,
+    T body
+) implements HttpResponse<T> {
+
+    JsonResponse(HttpResponse<?> response, T body) {
+        this(response.request(), response.statusCode(), response.headers(), response.uri(), response.version(), body);
+    }
+
+    @Override
+    public Optional<HttpResponse<T>> previousResponse() {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,194 @@
+package me.tud;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static me.tud.Main.*;
+
+public record LaunchProfile(int heapMegabytes, boolean pinHeap, Integer debugPort, String archive) {
+
+    public static final boolean TRAIN_ARCHIVE = Boolean.getBoolean("wizard.server.appcdsTraining");
+
+    private static final String MEMORY = System.getProperty("wizard.server.memory");
+    // commits the whole heap at boot, only worth it on a machine dedicated to the one server
+    private static final boolean PIN_HEAP = Boolean.getBoolean("wizard.server.pinHeap");
+    private static final Integer DEBUG_PORT = Integer.getInteger("wizard.server.debugPort");
+    private static final boolean APPCDS = Boolean.getBoolean("wizard.server.appcds") || TRAIN_ARCHIVE;
+    private static final long TRAINING_TIMEOUT = Long.getLong("wizard.server.appcdsTrainingTimeout", 600);
+
+    private static final int MIN_HEAP = 1024;
+    private static final int MAX_HEAP = 8 * 1024;
+    private static final int LARGE_HEAP = 12 * 1024;
+
+    public static LaunchProfile detect(String archive) {
+        return new LaunchProfile(MEMORY != null ? parseMegabytes(MEMORY) : heapFor(totalMemoryMegabytes()), PIN_HEAP, DEBUG_PORT, APPCDS ? archive : null);
+    }
+
+    public static String archiveName(String paperVersion, int build) {
+        return "paper-" + paperVersion + "-" + build + ".jsa";
+    }
+
+    // a quarter of the machine between 1G and 8G, rounded down to 512M steps
+    // the wizard sets up several servers on one host, so no single server may plan for most of its memory
+    static int heapFor(long totalMegabytes) {
+        long heap = Math.min(MAX_HEAP, Math.max(MIN_HEAP, totalMegabytes / 4));
+        return (int) (heap / 512 * 512);
+    }
+
+    private static long totalMemoryMegabytes() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean bean)
+            return bean.getTotalMemorySize() / (1024 * 1024);
+        return 4096;
+    }
+
+    private static int parseMegabytes(String value) {
+        String trimmed = value.trim().toUpperCase(Locale.ENGLISH);
+        char unit = trimmed.charAt(trimmed.length() - 1);
+        if (Character.isDigit(unit))
+            return Integer.parseInt(trimmed);
+        int amount = Integer.parseInt(trimmed.substring(0, trimmed.length() - 1));
+        return switch (unit) {
+            case 'G' -> amount * 1024;
+            case 'M' -> amount;
+            default -> throw new IllegalArgumentException("Invalid memory size '" + value + "', expected e.g. 4G or 4096M");
+        };
+    }
+
+    // https://docs.papermc.io/paper/aikars-flags
+    public List<String> jvmArguments() {
+        boolean large = heapMegabytes >= LARGE_HEAP;
+        List<String> arguments = new ArrayList<>();
+        if (pinHeap)
+            arguments.addAll(List.of("-Xms" + heapMegabytes + "M", "-XX:+AlwaysPreTouch"));
+        arguments.addAll(List.of(
+            "-Xmx" + heapMegabytes + "M",
+            "-XX:+UseG1GC",
+            "-XX:+ParallelRefProcEnabled",
+            "-XX:MaxGCPauseMillis=200",
+            "-XX:+UnlockExperimentalVMOptions",
+            "-XX:+DisableExplicitGC",
+            "-XX:G1NewSizePercent=" + (large ? 40 : 30),
+            "-XX:G1MaxNewSizePercent=" + (large ? 50 : 40),
+            "-XX:G1HeapRegionSize=" + (large ? "16M" : "8M"),
+            "-XX:G1ReservePercent=" + (large ? 15 : 20),
+            "-XX:G1HeapWastePercent=5",
+            "-XX:G1MixedGCCountTarget=4",
+            "-XX:InitiatingHeapOccupancyPercent=" + (large ? 20 : 15),
+            "-XX:G1MixedGCLiveThresholdPercent=90",
+            "-XX:G1RSetUpdatingPauseTimePercent=5",
+            "-XX:SurvivorRatio=32",
+            "-XX:+PerfDisableSharedMem",
+            "-XX:MaxTenuringThreshold=1"
+        ));
+        if (debugPort != null)
+            arguments.add("-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=*:" + debugPort);
+        return arguments;
+    }
+
+    // the first clean shutdown dumps the dynamic CDS archive, every later start maps it
+    public String shellScript() {
+        StringBuilder script = new StringBuilder("#!/bin/sh\ncd \"$(dirname \"$0\")\" || exit 1\n");
+        String cds = "";
+        if (archive != null) {
+            script.append("if [ -f ").append(archive).append(" ]; then\n")
+                .append("    CDS=\"-XX:SharedArchiveFile=").append(archive).append("\"\n")
+                .append("else\n")
+                .append("    CDS=\"-XX:ArchiveClassesAtExit=").append(archive).append("\"\n")
+                .append("fi\n");
+            cds = " $CDS";
+        }
+        script.append("exec java ").append(String.join(" ", jvmArguments())).append(cds).append(" -jar server.jar nogui \"$@\"\n");
+        return script.toString();
+    }
+
+    public String batchScript() {
+        StringBuilder script = new StringBuilder("@echo off\r\ncd /d \"%~dp0\"\r\n");
+        String cds = "";
+        if (archive != null) {
+            script.append("if exist ").append(archive)
+                .append(" (set CDS=-XX:SharedArchiveFile=").append(archive)
+                .append(") else (set CDS=-XX:ArchiveClassesAtExit=").append(archive).append(")\r\n");
+            cds = " %CDS%";
+        }
+        script.append("java ").append(String.join(" ", jvmArguments())).append(cds).append(" -jar server.jar nogui %*\r\n")
+            .append("pause\r\n");
+        return script.toString();
+    }
+
+    // returns the bytes written
+    public long write(File folder) throws IOException {
+        byte[] shell = shellScript().getBytes(StandardCharsets.UTF_8);
+        byte[] batch = batchScript().getBytes(StandardCharsets.UTF_8);
+        Path runShell = folder.toPath().resolve("run.sh");
+        Files.write(runShell, shell);
+        //noinspection ResultOfMethodCallIgnored
+        runShell.toFile().setExecutable(true);
+        Files.write(folder.toPath().resolve("run.bat"), batch);
+        return shell.length + batch.length;
+    }
+
+    // boots the server once with ArchiveClassesAtExit and stops it as soon as it's up, returns the archive size
+    public long train(File folder, Consumer<String> output) throws IOException, InterruptedException {
+        if (archive == null)
+            return 0;
+        List<String> command = new ArrayList<>();
+        // the same java the run scripts call, a dynamic archive is only mapped by the JVM that wrote it
+        command.add("java");
+        command.addAll(jvmArguments());
+        command.removeIf(argument -> argument.startsWith("-agentlib:jdwp") || argument.equals("-XX:+AlwaysPreTouch"));
+        command.add("-XX:ArchiveClassesAtExit=" + archive);
+        command.addAll(List.of("-jar", "server.jar", "nogui"));
+
+        Process process = new ProcessBuilder(command)
+            .directory(folder)
+            .redirectErrorStream(true)
+            .start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+             OutputStream input = process.getOutputStream()) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TRAINING_TIMEOUT);
+            Thread watchdog = new Thread(() -> {
+                try {
+                    if (!process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+                        process.destroyForcibly();
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                }
+            }, "appcds-training-watchdog");
+            watchdog.setDaemon(true);
+            watchdog.start();
+
+            String line;
+            boolean stopping = false;
+            while ((line = reader.readLine()) != null) {
+                if (!stopping && line.contains("Done (")) {
+                    output.accept(INFO + "Server booted, stopping it to write the class archive..." + RESET);
+                    input.write("stop\n".getBytes(StandardCharsets.UTF_8));
+                    input.flush();
+                    stopping = true;
+                }
+            }
+            if (process.waitFor() != 0 || !stopping)
+                throw new IOException("Training boot didn't complete cleanly (exit code " + process.exitValue() + ")");
+        } finally {
+            if (process.isAlive())
+                process.destroyForcibly();
+        }
+        Path archiveFile = folder.toPath().resolve(archive);
+        if (!Files.exists(archiveFile))
+            throw new IOException("Training boot finished without writing " + archive);
+        return Files.size(archiveFile);
+    }
+
+}
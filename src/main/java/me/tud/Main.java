@@ -9,15 +9,21 @@ import java.io.Console;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class Main {
 
+    public static final String SPEC = "--spec";
+    public static final String SAVE_TEMPLATE = "--save-template";
+    public static final String CLONE = "--clone";
+    public static final String UPGRADE = "--upgrade";
+    public static final String REBUILD = "--rebuild";
+    public static final String WORLDS = "--worlds";
     public static final String LIST_VERSIONS = "-versions";
     public static final String CANCEL = "-cancel";
-    public static final String RUN_SCRIPT = """
-        java -Xmx2G -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=*:5005 -jar server.jar nogui
-        PAUSE""";
+    public static final Path DATA_FOLDER = Path.of(System.getProperty("user.home"), ".skript-server-wizard");
 
     public static final String RESET = "\u001B[0m";
     public static final String BOLD = "\u001B[1m";
@@ -27,8 +33,31 @@ public class Main {
     public static final String SUCCESS = "\u001B[92m";
 
     public static void main(String[] args) throws IOException, URISyntaxException, InterruptedException {
+        if (args.length > 0) {
+            if (args.length == 2 && args[0].equals(SPEC))
+                System.exit(Provisioner.run(Path.of(args[1]), System.out) ? 0 : 1);
+            if ((args.length == 3 || args.length == 4 && args[3].equals(WORLDS)) && args[0].equals(SAVE_TEMPLATE))
+                System.exit(saveTemplate(new File(args[1]), args[2], args.length == 4, System.out::println) ? 0 : 1);
+            if (args.length == 3 && args[0].equals(CLONE))
+                System.exit(cloneTemplate(args[1], new File(args[2]), System.out::println) ? 0 : 1);
+            if (args.length == 2 && args[0].equals(UPGRADE))
+                System.exit(upgradeServer(new File(args[1]), null, System.out::println) ? 0 : 1);
+            if (args.length == 3 && args[0].equals(REBUILD))
+                System.exit(rebuildServer(Path.of(args[1]), new File(args[2]), null, System.out::println) ? 0 : 1);
+            System.err.println("Usage: java -jar server-wizard.jar [" + SPEC + " <file>"
+                + " | " + SAVE_TEMPLATE + " <server> <template> [" + WORLDS + "]"
+                + " | " + CLONE + " <template> <server>"
+                + " | " + UPGRADE + " <server>"
+                + " | " + REBUILD + " <lockfile|server> <server>]");
+            System.exit(2);
+        }
+
         Console console = System.console();
         if (console == null) {
+            if (!System.getProperty("os.name").toLowerCase(Locale.ENGLISH).startsWith("windows")) {
+                System.err.println("No console available, use " + SPEC + " <file> to provision servers headlessly");
+                System.exit(2);
+            }
             File source = new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
             ProcessBuilder builder = new ProcessBuilder("cmd", "/c", "start", "cmd.exe", "/k", "java -jar \"" + source.getName() + "\" && exit");
             builder.start();
@@ -40,8 +69,13 @@ public class Main {
 
         ServerInfo serverInfo = startWizard(terminal, reader);
         try {
-            if (serverInfo != null)
-                serverInfo.setup(reader);
+            if (serverInfo != null) {
+                try (ProgressDisplay progress = ProgressDisplay.open(terminal, reader::printAbove);
+                     ProgressDisplay.Scope ignored = progress.bind()) {
+                    serverInfo.setup(progress::log);
+                }
+                offerTemplate(reader, serverInfo);
+            }
         } catch (IOException | InterruptedException e) {
             handleException(e, terminal, reader, serverInfo);
         }
@@ -53,6 +87,74 @@ public class Main {
         terminal.close();
     }
 
+    public static boolean saveTemplate(File serverFolder, String name, boolean includeWorlds, Consumer<String> output) {
+        output.accept(INFO + "Saving '" + serverFolder.getName() + "' as template '" + name + "'..." + RESET);
+        try {
+            ServerTemplate.Result result = ServerTemplate.save(serverFolder, name, includeWorlds);
+            output.accept(SUCCESS + "Template '" + name + "' saved! (" + describe(result) + ")" + RESET);
+            return true;
+        } catch (IOException e) {
+            output.accept(ERROR + "Failed to save template '" + name + "': " + e.getMessage() + RESET);
+            return false;
+        }
+    }
+
+    public static boolean cloneTemplate(String name, File serverFolder, Consumer<String> output) {
+        output.accept(INFO + "Cloning template '" + name + "' into '" + serverFolder.getName() + "'..." + RESET);
+        try {
+            ServerTemplate.Result result = ServerTemplate.clone(name, serverFolder);
+            output.accept(SUCCESS + "Server '" + serverFolder.getName() + "' created! (" + describe(result) + ")" + RESET);
+            return true;
+        } catch (IOException e) {
+            output.accept(ERROR + "Failed to clone template '" + name + "': " + e.getMessage() + RESET);
+            return false;
+        }
+    }
+
+    // a null terminal logs download progress as plain lines
+    public static boolean upgradeServer(File serverFolder, Terminal terminal, Consumer<String> output) throws InterruptedException {
+        try (ProgressDisplay progress = ProgressDisplay.open(terminal, output);
+             ProgressDisplay.Scope ignored = progress.bind()) {
+            ServerUpgrade.run(serverFolder, progress::log);
+            return true;
+        } catch (IOException e) {
+            output.accept(ERROR + "Failed to upgrade '" + serverFolder.getName() + "': " + e.getMessage() + RESET);
+            return false;
+        }
+    }
+
+    public static boolean rebuildServer(Path lockfile, File serverFolder, Terminal terminal, Consumer<String> output) throws InterruptedException {
+        if (serverFolder.exists()) {
+            output.accept(ERROR + "Server '" + serverFolder.getName() + "' already exists" + RESET);
+            return false;
+        }
+        try (ProgressDisplay progress = ProgressDisplay.open(terminal, output);
+             ProgressDisplay.Scope ignored = progress.bind()) {
+            ServerInfo.fromLock(serverFolder, ServerManifest.read(lockfile)).setup(progress::log);
+            return true;
+        } catch (IOException e) {
+            output.accept(ERROR + "Failed to rebuild '" + serverFolder.getName() + "': " + e.getMessage() + RESET);
+            if (serverFolder.exists())
+                deleteFolder(serverFolder);
+            return false;
+        }
+    }
+
+    private static String describe(ServerTemplate.Result result) {
+        return result.linked() + " files linked, " + result.copied() + " copied, " + result.bytes() / (1024 * 1024) + " MB";
+    }
+
+    private static void offerTemplate(LineReader reader, ServerInfo serverInfo) {
+        reader.printAbove("");
+        String name;
+        while (!(name = reader.readLine("Save as template? (name, blank to skip): ").trim()).isEmpty() && !ServerTemplate.validName(name)) {
+            reader.printAbove(ERROR + "Template names may only contain letters, digits, '.', '_' and '-'" + RESET);
+            reader.printAbove("");
+        }
+        if (!name.isEmpty())
+            saveTemplate(serverInfo.folder(), name, false, reader::printAbove);
+    }
+
     public static void handleException(Exception exception, Terminal terminal, LineReader reader, ServerInfo serverInfo) {
         reader.printAbove(ERROR);
         reader.printAbove("Failed to setup server");
@@ -75,7 +177,7 @@ public class Main {
         else reader.printAbove(ERROR + "Failed to clean up server folder" + RESET);
     }
 
-    private static boolean deleteFolder(File folder) {
+    static boolean deleteFolder(File folder) {
         File[] files = folder.listFiles();
         if (files == null)
             return folder.delete();
@@ -87,6 +189,7 @@ public class Main {
     }
 
     private static ServerInfo startWizard(Terminal terminal, LineReader reader) throws IOException, InterruptedException, URISyntaxException {
+        Prefetcher.start();
         printWarningBlock(reader, new String[]{
             "By using this wizard, you implicitly agree to the Minecraft EULA",
             "If you don't agree to the EULA, do not use this wizard",
@@ -98,12 +201,31 @@ public class Main {
 
         String serverName;
         while ((serverName = reader.readLine("Server name: ")).isBlank() || new File(serverName).exists()) {
-            if (serverName.isBlank()) reader.printAbove(ERROR + "Server name cannot be empty" + RESET);
-            else reader.printAbove(ERROR + "Server '" + serverName + "' already exists" + RESET);
+            if (serverName.isBlank()) {
+                reader.printAbove(ERROR + "Server name cannot be empty" + RESET);
+            } else if (ServerManifest.exists(new File(serverName))) {
+                String upgrade;
+                do {
+                    upgrade = reader.readLine("Server '" + serverName + "' already exists, upgrade it? (y/n): ").toLowerCase(Locale.ENGLISH);
+                } while (!upgrade.equals("y") && !upgrade.equals("n"));
+                if (upgrade.equals("y")) {
+                    reader.printAbove("");
+                    upgradeServer(new File(serverName), terminal, reader::printAbove);
+                    return null;
+                }
+            } else {
+                reader.printAbove(ERROR + "Server '" + serverName + "' already exists" + RESET);
+            }
             reader.printAbove("");
         }
         reader.printAbove("");
 
+        String template = pickTemplate(reader);
+        if (template != null) {
+            cloneTemplate(template, new File(serverName), reader::printAbove);
+            return null;
+        }
+
         PaperAPI.Version paperVersion = pickPaperVersion(reader, true);
         reader.printAbove("");
 
@@ -111,10 +233,11 @@ public class Main {
         GitHubAPI.Release.Asset skriptAsset = pickAsset(reader, skriptRelease);
         if (skriptAsset == null)
             return null;
-        ServerInfo.Addon skript = new ServerInfo.Addon(GitHubAPI.SKRIPT_REPO.name(), skriptRelease.tagName(), skriptAsset.downloadURL());
+        ServerInfo.Addon skript = new ServerInfo.Addon(GitHubAPI.SKRIPT_REPO.owner().name(), GitHubAPI.SKRIPT_REPO.name(), skriptRelease.tagName(), skriptAsset);
         reader.printAbove("");
 
         Set<ServerInfo.Addon> addons = new LinkedHashSet<>();
+        List<GitHubAPI.Release.Asset> assets = new ArrayList<>(List.of(skriptAsset));
         reader.printAbove(INFO + "Add extra Skript addons" + RESET);
         while (true) {
             reader.printAbove(INFO + "Current addons: " + addons.stream()
@@ -139,7 +262,8 @@ public class Main {
                 reader.printAbove("");
                 continue;
             }
-            addons.add(new ServerInfo.Addon(repository.name(), addonRelease.tagName(), addonAsset.downloadURL()));
+            assets.add(addonAsset);
+            addons.add(new ServerInfo.Addon(repository.owner().name(), repository.name(), addonRelease.tagName(), addonAsset));
             reader.printAbove("");
         }
 
@@ -151,6 +275,7 @@ public class Main {
         reader.printAbove(INFO + " - Skript addons: " + addons.stream()
             .map(addon -> addon.name() + " " + addon.version())
             .toList() + RESET);
+        warnIncompatible(reader, paperVersion, assets);
         reader.printAbove("");
         String confirmation;
         do {
@@ -180,6 +305,20 @@ public class Main {
         reader.printAbove(" ".repeat(padding) + "#".repeat(lengthWithBorders) + RESET);
     }
 
+    private static String pickTemplate(LineReader reader) throws IOException {
+        List<String> templates = ServerTemplate.list();
+        if (templates.isEmpty())
+            return null;
+        reader.printAbove(INFO + "Saved templates: " + templates + RESET);
+        String template;
+        while (!(template = reader.readLine("Clone from template (default: none): ").trim()).isEmpty() && !templates.contains(template)) {
+            reader.printAbove(ERROR + "Template '" + template + "' doesn't exist" + RESET);
+            reader.printAbove("");
+        }
+        reader.printAbove("");
+        return template.isEmpty() ? null : template;
+    }
+
     private static PaperAPI.Version pickPaperVersion(LineReader reader, boolean showHint) throws IOException, InterruptedException {
         if (showHint)
             reader.printAbove(INFO + "Use '" + LIST_VERSIONS + "' to list all available versions" + RESET);
@@ -301,6 +440,28 @@ public class Main {
         return version;
     }
 
+    // only warns, a jar whose plugin.yml couldn't be read is left unchecked
+    private static void warnIncompatible(LineReader reader, PaperAPI.Version paperVersion, List<GitHubAPI.Release.Asset> assets) throws InterruptedException {
+        List<PluginDescription> descriptions = PluginDescription.describe(assets);
+        Set<String> installed = new HashSet<>();
+        for (PluginDescription description : descriptions) {
+            if (description != null && description.name() != null)
+                installed.add(description.name().toLowerCase(Locale.ENGLISH));
+        }
+        for (PluginDescription description : descriptions) {
+            if (description == null)
+                continue;
+            String name = description.name() != null ? description.name() : "A plugin";
+            if (!description.supports(paperVersion.version()))
+                reader.printAbove(WARN + name + " targets api-version " + description.apiVersion() + ", newer than Paper " + paperVersion.version() + RESET);
+            List<String> missing = description.depend().stream()
+                .filter(dependency -> !installed.contains(dependency.toLowerCase(Locale.ENGLISH)))
+                .toList();
+            if (!missing.isEmpty())
+                reader.printAbove(WARN + name + " depends on " + String.join(", ", missing) + ", which won't be installed" + RESET);
+        }
+    }
+
     private static GitHubAPI.Release.Asset pickAsset(LineReader reader, GitHubAPI.Release release) throws IOException, InterruptedException {
         List<GitHubAPI.Release.Asset> assets = release.getJarAssets();
         GitHubAPI.Repository repository = release.repository();
@@ -313,10 +474,20 @@ public class Main {
         if (assets.size() == 1)
             return assets.get(0);
 
+        // sources, javadoc and api jars have no plugin.yml, so the plugin itself is often obvious
+        GitHubAPI.Release.Asset plugin = PluginDescription.onlyPlugin(assets);
+        if (plugin != null) {
+            reader.printAbove(INFO + "Selected asset: " + plugin.name() + " (the only plugin jar of " + repository.name() + " " + release.tagName() + ")" + RESET);
+            return plugin;
+        }
+
+        List<PluginDescription> descriptions = PluginDescription.describe(assets);
         reader.printAbove("");
         reader.printAbove(INFO + "Multiple assets found for " + repository.name() + " " + release.tagName() + RESET);
-        for (int i = 0; i < assets.size(); i++)
-            reader.printAbove(INFO + (i + 1) + ") " + assets.get(i).name() + RESET);
+        for (int i = 0; i < assets.size(); i++) {
+            PluginDescription description = descriptions.get(i);
+            reader.printAbove(INFO + (i + 1) + ") " + assets.get(i).name() + (description != null ? " (" + description.summary() + ")" : "") + RESET);
+        }
         int index;
         while (true) {
             try {
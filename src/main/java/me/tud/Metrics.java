@@ -0,0 +1,185 @@
+package me.tud;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Locale;
+
+public final class Metrics {
+
+    // inherited so the download workers a setup spawns report into the same run
+    private static final InheritableThreadLocal<SetupReport> CURRENT = new InheritableThreadLocal<>();
+
+    private Metrics() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static SetupReport current() {
+        return CURRENT.get();
+    }
+
+    public static Scope bind(SetupReport report) {
+        SetupReport previous = CURRENT.get();
+        CURRENT.set(report);
+        return () -> {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        };
+    }
+
+    public static void request(SetupReport report, String method, URI uri, int status, long bytes, Cache cache, long start) {
+        long nanos = System.nanoTime() - start;
+        RequestEvent event = new RequestEvent();
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.uri = uri.toString();
+            event.status = status;
+            event.bytes = bytes;
+            event.cache = cache.label();
+            event.millis = nanos / 1_000_000;
+            event.commit();
+        }
+        if (report != null)
+            report.request(method, uri, status, bytes, cache, nanos);
+    }
+
+    public static long phase(String name, PhaseTask task) throws IOException, InterruptedException {
+        SetupReport report = CURRENT.get();
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long bytes = 0;
+        boolean success = false;
+        try {
+            bytes = task.run();
+            success = true;
+            return bytes;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            event.end();
+            if (event.shouldCommit()) {
+                event.server = report != null ? report.server() : null;
+                event.phase = name;
+                event.bytes = bytes;
+                event.success = success;
+                event.commit();
+            }
+            if (report != null)
+                report.phase(name, start, nanos, bytes, success);
+        }
+    }
+
+    public enum Cache {
+
+        HIT, REVALIDATED, MISS, BYPASS;
+
+        public String label() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+    @FunctionalInterface
+    public interface PhaseTask {
+
+        long run() throws IOException, InterruptedException;
+
+    }
+
+    public static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        public CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) count++;
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+    }
+
+    @Name("me.tud.HttpRequest")
+    @Label("HTTP Request")
+    @Category("Server Wizard")
+    private static final class RequestEvent extends Event {
+
+        @Label("Method")
+        private String method;
+
+        @Label("URI")
+        private String uri;
+
+        @Label("Status")
+        private int status;
+
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        @Label("Cache")
+        private String cache;
+
+        @Label("Latency (ms)")
+        private long millis;
+
+    }
+
+    @Name("me.tud.SetupPhase")
+    @Label("Setup Phase")
+    @Category("Server Wizard")
+    private static final class PhaseEvent extends Event {
+
+        @Label("Server")
+        private String server;
+
+        @Label("Phase")
+        private String phase;
+
+        @Label("Bytes")
+        @DataAmount
+        private long bytes;
+
+        @Label("Success")
+        private boolean success;
+
+    }
+
+}
@@ -1,23 +1,19 @@
 package me.tud;
 
-import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.List;
 
 public final class PaperAPI {
     
-    public static final String PAPER_ENDPOINT = "https://api.papermc.io/v2/projects/paper";
+    public static final String PAPER_ENDPOINT = System.getProperty("wizard.paper.endpoint", "https://api.papermc.io/v2/projects/paper");
     public static final String PAPER_VERSION_ENDPOINT = PAPER_ENDPOINT + "/versions/%s";
     public static final String PAPER_BUILD_ENDPOINT = PAPER_VERSION_ENDPOINT + "/builds/%s";
     public static final String PAPER_DOWNLOAD_ENDPOINT = PAPER_BUILD_ENDPOINT + "/downloads/%s";
-    private static final int OK = 200;
 
     private static List<Version> versions;
 
@@ -25,23 +21,33 @@ public final class PaperAPI {
         throw new UnsupportedOperationException();
     }
     
-    public static List<Version> versions() throws IOException, InterruptedException {
+    public static synchronized List<Version> versions() throws IOException, InterruptedException {
         if (versions != null)
             return versions;
-        HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-            HttpRequest.newBuilder(URI.create(PAPER_ENDPOINT))
-                .GET()
-                .build()
-        );
-        if (response.statusCode() != OK)
-            throw new IOException("Failed to get versions: " + response.body());
         List<Version> versions = new ArrayList<>();
-        for (JsonElement element : response.body().getAsJsonObject().getAsJsonArray("versions"))
-            versions.add(new Version(element.getAsString()));
+        for (String version : PaperIndex.versions())
+            versions.add(new Version(version));
         return PaperAPI.versions = versions;
     }
 
-    public static Version version(String version) {
+    static <T> List<T> readArray(JsonReader reader, String field, JsonBodyHandler.Decoder<T> decoder) throws IOException {
+        List<T> list = List.of();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(field)) list = JsonBodyHandler.list(decoder).decode(reader);
+            else reader.skipValue();
+        }
+        reader.endObject();
+        return list;
+    }
+
+    public static synchronized Version version(String version) {
+        if (versions != null) {
+            for (Version known : versions) {
+                if (known.version().equals(version))
+                    return known;
+            }
+        }
         return new Version(version);
     }
 
@@ -50,10 +56,23 @@ public final class PaperAPI {
         return versions.get(versions.size() - 1);
     }
 
+    // a version locked to one build, it never asks the api for anything
+    public static Version pinned(String version, int build, URL downloadURL, String sha256) {
+        Version pinned = new Version(version);
+        pinned.builds = List.of(build);
+        pinned.pinnedURL = downloadURL;
+        pinned.pinnedSha256 = sha256;
+        return pinned;
+    }
+
     public static class Version {
 
         private final String version;
         private List<Integer> builds;
+        // picked once, so the download and the lockfile agree even if the index refreshes in between
+        private PaperIndex.Build latest;
+        private URL pinnedURL;
+        private String pinnedSha256;
 
         public Version(String version) {
             this.version = version;
@@ -63,29 +82,35 @@ public final class PaperAPI {
             return version;
         }
 
-        public List<Integer> builds() throws IOException, InterruptedException {
+        public synchronized List<Integer> builds() throws IOException, InterruptedException {
             if (builds != null)
                 return builds;
-            HttpResponse<JsonElement> response = HttpUtils.sendRequest(
-                HttpRequest.newBuilder(URI.create(PAPER_VERSION_ENDPOINT.formatted(version)))
-                    .GET()
-                    .build()
-            );
-            if (response.statusCode() != OK)
-                return this.builds = List.of();
-            List<Integer> builds = new ArrayList<>();
-            for (JsonElement element : response.body().getAsJsonObject().getAsJsonArray("builds"))
-                builds.add(element.getAsInt());
-            return this.builds = builds;
+            List<PaperIndex.Build> indexed = PaperIndex.builds(version);
+            latest = PaperIndex.latest(indexed);
+            return this.builds = indexed.stream().map(PaperIndex.Build::build).toList();
+        }
+
+        // the newest stable build, an experimental one only if the version has no stable build yet
+        public synchronized int latestBuild() throws IOException, InterruptedException {
+            List<Integer> builds = builds();
+            if (latest != null)
+                return latest.build();
+            return builds.get(builds.size() - 1);
         }
 
-        public int latestBuild() throws IOException, InterruptedException {
-            return builds().get(builds.size() - 1);
+        public synchronized String channel() throws IOException, InterruptedException {
+            builds();
+            return latest != null ? latest.channel() : null;
         }
 
         public URL downloadURL() throws IOException, InterruptedException {
+            if (pinnedURL != null)
+                return pinnedURL;
             int latestBuild = latestBuild();
-            String name = "paper-" + version + "-" + latestBuild + ".jar";
+            String name;
+            synchronized (this) {
+                name = latest != null && latest.name() != null ? latest.name() : "paper-" + version + "-" + latestBuild + ".jar";
+            }
             try {
                 return new URL(PAPER_DOWNLOAD_ENDPOINT.formatted(version, latestBuild, name));
             } catch (MalformedURLException e) {
@@ -93,8 +118,19 @@ public final class PaperAPI {
             }
         }
 
+        // null when the expected hash of the download isn't known
+        public synchronized String sha256() throws IOException, InterruptedException {
+            if (pinnedURL != null)
+                return pinnedSha256;
+            builds();
+            return latest != null ? latest.sha256() : null;
+        }
+
+        // answered from the index, the api is only asked about versions it hasn't seen
         public boolean valid() throws IOException, InterruptedException {
-            return !builds().isEmpty();
+            if (pinnedURL != null)
+                return true;
+            return PaperIndex.known(version);
         }
 
         @Override
@@ -0,0 +1,313 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// versions -> builds -> {download name, sha256, channel, time}, kept on disk so lookups never wait for the api
+public final class PaperIndex {
+
+    private static final Path FILE = Main.DATA_FOLDER.resolve("cache").resolve("paper-index.json");
+    private static final Duration TTL = Duration.ofSeconds(Long.getLong("wizard.paper.index.ttl", 600));
+    // more new builds than this are cheaper to get from the full builds list than one by one
+    private static final int INCREMENTAL_LIMIT = Integer.getInteger("wizard.paper.index.incrementalLimit", 8);
+    private static final String PAPER_BUILDS_ENDPOINT = PaperAPI.PAPER_VERSION_ENDPOINT + "/builds";
+    private static final String VERSIONS_KEY = "";
+    private static final Gson GSON = new Gson();
+
+    private static final int OK = 200;
+    private static final int NOT_FOUND = 404;
+
+    private static final Set<String> REFRESHING = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(null, runnable, "paper-index", 0, false);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private static Data data;
+
+    private PaperIndex() {
+        throw new UnsupportedOperationException();
+    }
+
+    // stale entries are served right away and refreshed in the background, only missing ones are waited for
+    public static List<String> versions() throws IOException, InterruptedException {
+        Data data = data();
+        synchronized (PaperIndex.class) {
+            if (data.versions != null && !stale(data.versionsChecked)) {
+                return data.versions;
+            } else if (data.versions != null && !HttpCache.revalidating()) {
+                refreshLater(VERSIONS_KEY);
+                return data.versions;
+            }
+        }
+        return refreshVersions();
+    }
+
+    public static List<Build> builds(String version) throws IOException, InterruptedException {
+        Data data = data();
+        synchronized (PaperIndex.class) {
+            Entry entry = data.builds.get(version);
+            if (entry != null && !stale(entry.checked)) {
+                return entry.builds;
+            } else if (entry != null && !HttpCache.revalidating()) {
+                refreshLater(version);
+                return entry.builds;
+            }
+        }
+        return refreshBuilds(version);
+    }
+
+    // a known version is answered from the index, an unknown one only after the version list was refreshed
+    public static boolean known(String version) throws IOException, InterruptedException {
+        if (versions().contains(version))
+            return true;
+        synchronized (PaperIndex.class) {
+            if (!stale(data().versionsChecked))
+                return false;
+        }
+        return refreshVersions().contains(version);
+    }
+
+    // the newest build on the default channel, experimental builds only count while a version has nothing else
+    public static Build latest(List<Build> builds) {
+        for (int i = builds.size() - 1; i >= 0; i--) {
+            if (builds.get(i).stable())
+                return builds.get(i);
+        }
+        return builds.isEmpty() ? null : builds.get(builds.size() - 1);
+    }
+
+    private static void refreshLater(String key) {
+        if (!REFRESHING.add(key))
+            return;
+        EXECUTOR.execute(() -> {
+            try {
+                if (key.equals(VERSIONS_KEY)) {
+                    refreshVersions();
+                } else {
+                    refreshBuilds(key);
+                }
+            } catch (IOException | InterruptedException | RuntimeException ignored) {
+                // the stale entry keeps serving until a later refresh gets through
+            } finally {
+                REFRESHING.remove(key);
+            }
+        });
+    }
+
+    private static List<String> refreshVersions() throws IOException, InterruptedException {
+        HttpResponse<List<String>> response = HttpUtils.sendRequest(
+            HttpRequest.newBuilder(URI.create(PaperAPI.PAPER_ENDPOINT)).GET().build(),
+            reader -> PaperAPI.readArray(reader, "versions", JsonReader::nextString)
+        );
+        if (response.statusCode() != OK)
+            throw new IOException("Failed to get versions: HTTP " + response.statusCode());
+        synchronized (PaperIndex.class) {
+            Data data = data();
+            data.versions = List.copyOf(response.body());
+            data.versionsChecked = System.currentTimeMillis();
+            save(data);
+            return data.versions;
+        }
+    }
+
+    // the build numbers are a small response, so only the builds that aren't indexed yet are fetched in full
+    private static List<Build> refreshBuilds(String version) throws IOException, InterruptedException {
+        HttpResponse<List<Integer>> response = HttpUtils.sendRequest(
+            HttpRequest.newBuilder(URI.create(PaperAPI.PAPER_VERSION_ENDPOINT.formatted(version))).GET().build(),
+            reader -> PaperAPI.readArray(reader, "builds", JsonReader::nextInt)
+        );
+        if (response.statusCode() != OK && response.statusCode() != NOT_FOUND)
+            throw new IOException("Failed to get Paper " + version + " builds: HTTP " + response.statusCode());
+        List<Integer> numbers = response.statusCode() == OK ? response.body() : List.of();
+
+        List<Build> known;
+        synchronized (PaperIndex.class) {
+            Entry entry = data().builds.get(version);
+            known = entry != null ? entry.builds : List.of();
+        }
+        Map<Integer, Build> builds = new HashMap<>();
+        for (Build build : known)
+            builds.put(build.build(), build);
+        List<Integer> missing = new ArrayList<>();
+        for (int number : numbers) {
+            if (!builds.containsKey(number))
+                missing.add(number);
+        }
+        if (missing.size() > INCREMENTAL_LIMIT) {
+            for (Build build : fetchAll(version))
+                builds.put(build.build(), build);
+        } else if (!missing.isEmpty()) {
+            for (Build build : fetch(version, missing))
+                builds.put(build.build(), build);
+        }
+        // builds the api no longer lists are dropped as well
+        builds.keySet().retainAll(new HashSet<>(numbers));
+        List<Build> sorted = new ArrayList<>(builds.values());
+        sorted.sort(Comparator.comparingInt(Build::build));
+
+        synchronized (PaperIndex.class) {
+            Data data = data();
+            Entry entry = new Entry(System.currentTimeMillis(), List.copyOf(sorted));
+            data.builds.put(version, entry);
+            save(data);
+            return entry.builds;
+        }
+    }
+
+    private static List<Build> fetchAll(String version) throws IOException, InterruptedException {
+        HttpResponse<List<Build>> response = HttpUtils.sendRequest(
+            HttpRequest.newBuilder(URI.create(PAPER_BUILDS_ENDPOINT.formatted(version))).GET().build(),
+            reader -> PaperAPI.readArray(reader, "builds", Build::read)
+        );
+        if (response.statusCode() != OK)
+            throw new IOException("Failed to get Paper " + version + " builds: HTTP " + response.statusCode());
+        return response.body();
+    }
+
+    private static List<Build> fetch(String version, List<Integer> numbers) throws IOException, InterruptedException {
+        List<CompletableFuture<HttpResponse<Build>>> futures = new ArrayList<>();
+        for (int number : numbers) {
+            futures.add(HttpUtils.sendAsync(
+                HttpRequest.newBuilder(URI.create(PaperAPI.PAPER_BUILD_ENDPOINT.formatted(version, number))).GET().build(),
+                Build::read
+            ));
+        }
+        List<Build> builds = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            HttpResponse<Build> response = await(futures.get(i));
+            if (response.statusCode() != OK)
+                throw new IOException("Failed to get Paper " + version + " build " + numbers.get(i) + ": HTTP " + response.statusCode());
+            builds.add(response.body());
+        }
+        return builds;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException exception)
+                throw exception.getCause();
+            if (e.getCause() instanceof CompletionException exception && exception.getCause() instanceof InterruptedException interrupted)
+                throw interrupted;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static boolean stale(long checked) {
+        return HttpCache.revalidating() || System.currentTimeMillis() - checked >= TTL.toMillis();
+    }
+
+    private static synchronized Data data() {
+        if (data != null)
+            return data;
+        try {
+            if (Files.exists(FILE))
+                data = GSON.fromJson(Files.readString(FILE, StandardCharsets.UTF_8), Data.class);
+        } catch (IOException | JsonParseException e) {
+            // a broken index is rebuilt from the api
+        }
+        if (data == null)
+            data = new Data();
+        if (data.builds == null)
+            data.builds = new HashMap<>();
+        return data;
+    }
+
+    // the index is only ever a cache, so failing to write it is not an error
+    private static void save(Data data) {
+        try {
+            Files.createDirectories(FILE.getParent());
+            Path temp = Files.createTempFile(FILE.getParent(), FILE.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(temp, GSON.toJson(data), StandardCharsets.UTF_8);
+                Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException ignored) {}
+    }
+
+    public record Build(int build, String name, String sha256, String channel, String time) {
+
+        public boolean stable() {
+            return channel == null || channel.equals("default");
+        }
+
+        // a single build object from either the builds list or the build endpoint
+        static Build read(JsonReader reader) throws IOException {
+            int build = 0;
+            String name = null, sha256 = null, channel = null, time = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "build" -> build = reader.nextInt();
+                    case "channel" -> channel = reader.nextString();
+                    case "time" -> time = reader.nextString();
+                    case "downloads" -> {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (!reader.nextName().equals("application")) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                switch (reader.nextName()) {
+                                    case "name" -> name = reader.nextString();
+                                    case "sha256" -> sha256 = reader.nextString();
+                                    default -> reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                        }
+                        reader.endObject();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new Build(build, name, sha256, channel, time);
+        }
+
+    }
+
+    private record Entry(long checked, List<Build> builds) {}
+
+    private static final class Data {
+
+        private List<String> versions;
+        private long versionsChecked;
+        private Map<String, Entry> builds;
+
+    }
+
+}
@@ -0,0 +1,132 @@
+package me.tud;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public final class PaperclipCache {
+
+    public static final boolean ENABLED = Boolean.getBoolean("wizard.paperclip.prepatch");
+
+    private static final Path FOLDER = Main.DATA_FOLDER.resolve("paperclip");
+    private static final long TIMEOUT = Long.getLong("wizard.paperclip.timeout", 600);
+    private static final List<String> OUTPUTS = List.of("cache", "versions", "libraries");
+
+    private static final Map<String, CompletableFuture<Path>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private PaperclipCache() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void warm(URL url) throws IOException, InterruptedException {
+        prepare(JarStore.fetch(url));
+    }
+
+    // links the patched jar and libraries of the given paperclip build into the server folder, returns the bytes linked
+    public static long install(URL url, File serverFolder) throws IOException, InterruptedException {
+        Path object = JarStore.fetch(url);
+        Path prepared = prepare(object);
+        long bytes = 0;
+        for (String output : OUTPUTS) {
+            Path source = prepared.resolve(output);
+            if (!Files.isDirectory(source))
+                continue;
+            List<Path> files;
+            try (Stream<Path> stream = Files.walk(source)) {
+                files = stream.filter(Files::isRegularFile).toList();
+            }
+            for (Path file : files) {
+                Path target = serverFolder.toPath().resolve(prepared.relativize(file));
+                Files.createDirectories(target.getParent());
+                JarStore.link(file, target);
+                bytes += Files.size(file);
+            }
+        }
+        return bytes;
+    }
+
+    private static Path prepare(Path object) throws IOException, InterruptedException {
+        String hash = JarStore.objectHash(object);
+        Path prepared = FOLDER.resolve(hash);
+        if (Files.isDirectory(prepared))
+            return prepared;
+
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        CompletableFuture<Path> existing = IN_FLIGHT.putIfAbsent(hash, future);
+        if (existing != null)
+            return await(existing);
+        try {
+            if (!Files.isDirectory(prepared))
+                patch(object, prepared);
+            future.complete(prepared);
+            return prepared;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(hash, future);
+        }
+    }
+
+    // paperclip.patchonly makes paperclip apply its patches and fetch the libraries, then exit without starting the server
+    private static void patch(Path object, Path prepared) throws IOException, InterruptedException {
+        Files.createDirectories(FOLDER);
+        Path work = Files.createTempDirectory(FOLDER, prepared.getFileName() + ".");
+        Path log = FOLDER.resolve(prepared.getFileName() + ".log");
+        try {
+            JarStore.link(object, work.resolve("server.jar"));
+            Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+            Process process = new ProcessBuilder(java.toString(), "-Dpaperclip.patchonly=true", "-jar", "server.jar")
+                .directory(work.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+            boolean exited;
+            try {
+                exited = process.waitFor(TIMEOUT, TimeUnit.SECONDS);
+            } finally {
+                if (process.isAlive())
+                    process.destroyForcibly();
+            }
+            if (!exited)
+                throw new IOException("Paperclip didn't finish patching within " + TIMEOUT + "s, see " + log);
+            if (process.exitValue() != 0)
+                throw new IOException("Paperclip exited with code " + process.exitValue() + ", see " + log);
+            Files.delete(work.resolve("server.jar"));
+            try {
+                Files.move(work, prepared, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException ignored) {
+                // another wizard process prepared the same build first
+            }
+            Files.deleteIfExists(log);
+        } finally {
+            if (Files.exists(work))
+                Main.deleteFolder(work.toFile());
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException exception)
+                throw exception;
+            if (e.getCause() instanceof InterruptedException exception)
+                throw exception;
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package me.tud;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// the parts of a plugin.yml the wizard cares about, read straight from the release asset without downloading it
+public record PluginDescription(String name, String version, String main, String apiVersion, List<String> depend, List<String> softDepend) {
+
+    private static final List<String> DESCRIPTORS = List.of("plugin.yml", "paper-plugin.yml");
+    private static final Pattern KEY = Pattern.compile("([A-Za-z0-9_-]+):(.*)");
+    private static final Pattern LIST_ITEM = Pattern.compile("\\s*-\\s*(.*)");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    private static final Map<String, CompletableFuture<Optional<PluginDescription>>> CACHE = new ConcurrentHashMap<>();
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "plugin-description");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // null for jars without a plugin.yml and for jars that couldn't be read
+    public static PluginDescription of(GitHubAPI.Release.Asset asset) throws InterruptedException {
+        return describe(List.of(asset)).get(0);
+    }
+
+    // reads every asset at once, each costs a few kilobytes of range requests instead of the whole jar
+    public static List<PluginDescription> describe(List<GitHubAPI.Release.Asset> assets) throws InterruptedException {
+        List<PluginDescription> descriptions = new ArrayList<>(assets.size());
+        for (CompletableFuture<Optional<PluginDescription>> lookup : lookups(assets))
+            descriptions.add(result(lookup).flatMap(description -> description).orElse(null));
+        return descriptions;
+    }
+
+    // the one asset that is a plugin when the others are sources, javadocs or api jars, null if that's not clear cut
+    public static GitHubAPI.Release.Asset onlyPlugin(List<GitHubAPI.Release.Asset> assets) throws InterruptedException {
+        List<CompletableFuture<Optional<PluginDescription>>> lookups = lookups(assets);
+        GitHubAPI.Release.Asset plugin = null;
+        for (int i = 0; i < assets.size(); i++) {
+            Optional<Optional<PluginDescription>> result = result(lookups.get(i));
+            // a jar that couldn't be read might be the plugin as well
+            if (result.isEmpty())
+                return null;
+            if (result.get().isEmpty())
+                continue;
+            if (plugin != null)
+                return null;
+            plugin = assets.get(i);
+        }
+        return plugin;
+    }
+
+    private static List<CompletableFuture<Optional<PluginDescription>>> lookups(List<GitHubAPI.Release.Asset> assets) {
+        List<CompletableFuture<Optional<PluginDescription>>> lookups = new ArrayList<>(assets.size());
+        for (GitHubAPI.Release.Asset asset : assets)
+            lookups.add(CACHE.computeIfAbsent(asset.downloadURL().toString(), key -> lookup(key, asset)));
+        return lookups;
+    }
+
+    // a failed read leaves the cache before anyone sees the failure, so the next lookup of the asset tries again
+    private static CompletableFuture<Optional<PluginDescription>> lookup(String key, GitHubAPI.Release.Asset asset) {
+        CompletableFuture<Optional<PluginDescription>> lookup = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            try {
+                byte[] content = RemoteZip.read(asset.downloadURL(), DESCRIPTORS);
+                lookup.complete(Optional.ofNullable(content != null ? parse(new String(content, StandardCharsets.UTF_8)) : null));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                CACHE.remove(key, lookup);
+                lookup.completeExceptionally(e);
+            }
+        });
+        return lookup;
+    }
+
+    // empty when the lookup failed, reading plugin metadata is best effort and never fails the wizard
+    private static Optional<Optional<PluginDescription>> result(CompletableFuture<Optional<PluginDescription>> lookup) throws InterruptedException {
+        try {
+            return Optional.of(lookup.get());
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    // only the top level keys of a plugin.yml, which is all the descriptor format uses for these fields
+    static PluginDescription parse(String yaml) {
+        String name = null, version = null, main = null, apiVersion = null;
+        List<String> depend = List.of(), softDepend = List.of();
+        String[] lines = yaml.split("\\R");
+        for (int i = 0; i < lines.length; i++) {
+            Matcher matcher = KEY.matcher(lines[i]);
+            if (!matcher.matches())
+                continue;
+            String value = scalar(matcher.group(2));
+            List<String> list = null;
+            if (value.isEmpty()) {
+                list = new ArrayList<>();
+                Matcher item;
+                while (i + 1 < lines.length && (item = LIST_ITEM.matcher(lines[i + 1])).matches()) {
+                    list.add(scalar(item.group(1)));
+                    i++;
+                }
+            } else if (value.startsWith("[") && value.endsWith("]")) {
+                list = new ArrayList<>();
+                for (String element : value.substring(1, value.length() - 1).split(",")) {
+                    if (!element.isBlank())
+                        list.add(scalar(element));
+                }
+            }
+            switch (matcher.group(1)) {
+                case "name" -> name = value;
+                case "version" -> version = value;
+                case "main" -> main = value;
+                case "api-version" -> apiVersion = value;
+                case "depend" -> depend = list != null ? List.copyOf(list) : List.of(value);
+                case "softdepend" -> softDepend = list != null ? List.copyOf(list) : List.of(value);
+            }
+        }
+        return new PluginDescription(name, version, main, apiVersion, depend, softDepend);
+    }
+
+    private static String scalar(String value) {
+        value = value.strip();
+        if (value.length() >= 2 && (value.charAt(0) == '"' || value.charAt(0) == '\'')) {
+            int end = value.indexOf(value.charAt(0), 1);
+            if (end > 0)
+                return value.substring(1, end);
+        }
+        int comment = value.indexOf(" #");
+        return (comment >= 0 ? value.substring(0, comment) : value).strip();
+    }
+
+    // api-version is the oldest Minecraft version the plugin was built against, so it must not be newer than the server
+    public boolean supports(String minecraftVersion) {
+        if (apiVersion == null)
+            return true;
+        List<Integer> required = numbers(apiVersion);
+        List<Integer> available = numbers(minecraftVersion);
+        for (int i = 0; i < required.size(); i++) {
+            int part = i < available.size() ? available.get(i) : 0;
+            if (required.get(i) != part)
+                return required.get(i) < part;
+        }
+        return true;
+    }
+
+    private static List<Integer> numbers(String version) {
+        List<Integer> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER.matcher(version);
+        while (matcher.find())
+            numbers.add(Integer.parseInt(matcher.group()));
+        return numbers;
+    }
+
+    public String summary() {
+        List<String> parts = new ArrayList<>();
+        if (apiVersion != null)
+            parts.add("api " + apiVersion);
+        if (!depend.isEmpty())
+            parts.add("depends on " + String.join(", ", depend));
+        return parts.isEmpty() ? "plugin" : String.join(", ", parts);
+    }
+
+}
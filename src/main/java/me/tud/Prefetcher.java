@@ -0,0 +1,63 @@
+package me.tud;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class Prefetcher {
+
+    private static final boolean PREFETCH_DOWNLOADS = Boolean.parseBoolean(System.getProperty("wizard.prefetch.downloads", "true"));
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "prefetch-worker");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private Prefetcher() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static void start() {
+        EXECUTOR.execute(() -> run(Prefetcher::prefetchPaper));
+        EXECUTOR.execute(() -> {
+            run(Prefetcher::prefetchSkript);
+            run(GitHubAPI.SKRIPT_REPO::getReleases);
+        });
+    }
+
+    private static void prefetchPaper() throws Exception {
+        PaperAPI.Version version = PaperAPI.latestVersion();
+        version.builds();
+        if (PREFETCH_DOWNLOADS)
+            JarStore.fetch(version.downloadURL(), version.sha256());
+        if (PREFETCH_DOWNLOADS && PaperclipCache.ENABLED)
+            PaperclipCache.warm(version.downloadURL());
+    }
+
+    private static void prefetchSkript() throws Exception {
+        GitHubAPI.Release release = GitHubAPI.SKRIPT_REPO.getLatestRelease();
+        if (release == null)
+            return;
+        List<GitHubAPI.Release.Asset> assets = release.getJarAssets();
+        if (PREFETCH_DOWNLOADS && assets.size() == 1)
+            JarStore.fetch(assets.get(0).downloadURL());
+    }
+
+    private static void run(Task task) {
+        try {
+            task.run();
+        } catch (Exception ignored) {
+            // speculative, the wizard will fetch whatever it needs on demand
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+
+        void run() throws Exception;
+
+    }
+
+}
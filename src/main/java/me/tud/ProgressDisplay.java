@@ -0,0 +1,268 @@
+package me.tud;
+
+import org.jline.terminal.Terminal;
+import org.jline.utils.AttributedString;
+import org.jline.utils.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static me.tud.Main.*;
+
+// live progress of the running downloads, drawn in the terminal's status area or logged every few seconds without one
+// transfer threads only bump counters, everything else happens on the render thread
+public final class ProgressDisplay implements AutoCloseable {
+
+    private static final int FRAMES_PER_SECOND = Integer.getInteger("wizard.progress.fps", 10);
+    private static final long LOG_INTERVAL = Long.getLong("wizard.progress.logInterval", 5);
+    // seconds the transfer rate is smoothed over, so a single slow read doesn't make the eta jump
+    private static final double RATE_WINDOW = 2;
+    private static final int MAX_LABEL = 32;
+    private static final int MIN_BAR = 10;
+    private static final int MAX_BAR = 40;
+
+    // inherited so the download workers a setup spawns report into the same display
+    private static final InheritableThreadLocal<ProgressDisplay> CURRENT = new InheritableThreadLocal<>();
+    private static final ThreadLocal<Transfer> TRANSFER = new ThreadLocal<>();
+    private static final Transfer NONE = new Transfer(null, null);
+
+    private final Terminal terminal;
+    private final Status status;
+    private final Consumer<String> output;
+    private final List<Transfer> transfers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService renderer;
+    private List<AttributedString> shown = List.of();
+    private boolean closed;
+
+    private ProgressDisplay(Terminal terminal, Status status, Consumer<String> output) {
+        this.terminal = terminal;
+        this.status = status;
+        this.output = output;
+        this.renderer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(null, runnable, "progress-render", 0, false);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = status != null ? 1000 / Math.max(1, FRAMES_PER_SECOND) : TimeUnit.SECONDS.toMillis(Math.max(1, LOG_INTERVAL));
+        renderer.scheduleAtFixedRate(this::render, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // a null or dumb terminal, or one without a scroll region, gets plain log lines instead of bars
+    public static ProgressDisplay open(Terminal terminal, Consumer<String> output) {
+        Status status = null;
+        if (terminal != null && !Terminal.TYPE_DUMB.equals(terminal.getType()) && !Terminal.TYPE_DUMB_COLOR.equals(terminal.getType()))
+            status = Status.getStatus(terminal);
+        return new ProgressDisplay(terminal, status, output);
+    }
+
+    public Scope bind() {
+        ProgressDisplay previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        };
+    }
+
+    // shows the download the current thread runs next under the given label, until the returned transfer is closed
+    public static Transfer track(String label) {
+        ProgressDisplay display = CURRENT.get();
+        if (display == null)
+            return NONE;
+        Transfer transfer = new Transfer(display, label);
+        TRANSFER.set(transfer);
+        display.transfers.add(transfer);
+        return transfer;
+    }
+
+    static Transfer current() {
+        Transfer transfer = TRANSFER.get();
+        return transfer != null ? transfer : NONE;
+    }
+
+    // lines go through here so they never interleave with a status redraw
+    public synchronized void log(String line) {
+        output.accept(line);
+    }
+
+    private void render() {
+        try {
+            long now = System.nanoTime();
+            List<Transfer> active = new ArrayList<>();
+            for (Transfer transfer : transfers) {
+                if (transfer.started()) {
+                    transfer.sample(now);
+                    active.add(transfer);
+                }
+            }
+            if (status != null) {
+                draw(active);
+            } else {
+                for (Transfer transfer : active)
+                    log(INFO + transfer.label + ": " + describe(transfer) + RESET);
+            }
+        } catch (RuntimeException ignored) {
+            // a broken frame must not stop the renderer, the next one redraws everything
+        }
+    }
+
+    private synchronized void draw(List<Transfer> active) {
+        if (closed)
+            return;
+        int width = Math.max(40, terminal.getWidth());
+        int rows = Math.max(1, terminal.getHeight() / 2);
+        int labelWidth = 0;
+        for (Transfer transfer : active)
+            labelWidth = Math.max(labelWidth, Math.min(MAX_LABEL, transfer.label.length()));
+
+        List<AttributedString> lines = new ArrayList<>();
+        for (int i = 0; i < active.size() && lines.size() < rows; i++) {
+            if (lines.size() == rows - 1 && active.size() > rows) {
+                lines.add(AttributedString.fromAnsi(INFO + "... and " + (active.size() - i) + " more" + RESET));
+                break;
+            }
+            Transfer transfer = active.get(i);
+            String details = describe(transfer);
+            int barWidth = Math.min(MAX_BAR, width - labelWidth - details.length() - 6);
+            StringBuilder line = new StringBuilder(pad(transfer.label, labelWidth)).append(' ');
+            if (barWidth >= MIN_BAR)
+                line.append(bar(transfer, barWidth)).append(' ');
+            line.append(INFO).append(details).append(RESET);
+            lines.add(AttributedString.fromAnsi(line.toString()));
+        }
+        if (lines.equals(shown))
+            return;
+        shown = lines;
+        status.update(lines);
+    }
+
+    @Override
+    public void close() {
+        renderer.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            if (status != null && !shown.isEmpty())
+                status.update(List.of());
+        }
+    }
+
+    private static String bar(Transfer transfer, int width) {
+        int filled = transfer.total > 0 ? (int) (width * Math.min(1, (double) transfer.done.get() / transfer.total)) : 0;
+        return "[" + SUCCESS + "=".repeat(filled) + RESET + " ".repeat(width - filled) + "]";
+    }
+
+    private static String describe(Transfer transfer) {
+        long done = transfer.done.get();
+        StringBuilder details = new StringBuilder();
+        if (transfer.total > 0) {
+            details.append(done * 100 / transfer.total).append("% of ").append(bytes(transfer.total));
+        } else {
+            details.append(bytes(done));
+        }
+        // the first frame of a download has no rate yet
+        if (transfer.rate > 0) {
+            details.append(", ").append(bytes((long) transfer.rate)).append("/s");
+            if (transfer.total > 0)
+                details.append(", ETA ").append(duration((long) ((transfer.total - done) / transfer.rate)));
+        }
+        return details.toString();
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + " B";
+        if (bytes < 1024 * 1024)
+            return String.format(Locale.ENGLISH, "%.1f KB", bytes / 1024.0);
+        return String.format(Locale.ENGLISH, "%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    private static String duration(long seconds) {
+        return seconds < 60 ? seconds + "s" : seconds / 60 + "m " + seconds % 60 + "s";
+    }
+
+    private static String pad(String label, int width) {
+        if (label.length() > width)
+            return label.substring(0, Math.max(0, width - 3)) + "...";
+        return label + " ".repeat(width - label.length());
+    }
+
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+    public static final class Transfer implements AutoCloseable {
+
+        private final ProgressDisplay display;
+        private final String label;
+        private final AtomicLong done = new AtomicLong();
+        private volatile long total = -1;
+        private volatile long started, resumedAt;
+        // only touched by the render thread
+        private long sampledStart, sampledBytes, sampledAt;
+        private double rate;
+
+        private Transfer(ProgressDisplay display, String label) {
+            this.display = display;
+            this.label = label;
+        }
+
+        // called again when a download starts over, total is -1 while the size is unknown
+        void start(long total, long done) {
+            if (display == null)
+                return;
+            this.total = total;
+            this.done.set(done);
+            this.resumedAt = done;
+            this.started = System.nanoTime();
+        }
+
+        void advance(long bytes) {
+            if (display != null)
+                done.addAndGet(bytes);
+        }
+
+        private boolean started() {
+            return started != 0;
+        }
+
+        private void sample(long now) {
+            long bytes = done.get();
+            if (sampledStart != started) {
+                // a fresh or restarted download, bytes it resumed from weren't transferred just now
+                sampledStart = started;
+                sampledBytes = resumedAt;
+                sampledAt = started;
+                rate = 0;
+            }
+            double seconds = Math.max(1e-3, (now - sampledAt) / 1e9);
+            double current = (bytes - sampledBytes) / seconds;
+            // exponential smoothing weighted by the time since the last sample, so any frame rate averages the same window
+            double weight = 1 - Math.exp(-seconds / RATE_WINDOW);
+            rate = rate == 0 ? current : rate + (current - rate) * weight;
+            sampledBytes = bytes;
+            sampledAt = now;
+        }
+
+        @Override
+        public void close() {
+            if (display == null)
+                return;
+            display.transfers.remove(this);
+            if (TRANSFER.get() == this)
+                TRANSFER.remove();
+        }
+
+    }
+
+}
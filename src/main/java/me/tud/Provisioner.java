@@ -0,0 +1,271 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+public final class Provisioner {
+
+    private static final String LATEST = "latest";
+    private static final Pattern COLORS = Pattern.compile("\u001B\\[[0-9;]*m");
+    private static final Gson GSON = new Gson();
+
+    private final PrintStream out;
+    private final ExecutorService resolveExecutor = Executors.newCachedThreadPool(daemon("resolve-worker"));
+    private final Map<String, CompletableFuture<PaperAPI.Version>> paperVersions = new ConcurrentHashMap<>();
+    private final Map<String, GitHubAPI.Repository> repositories = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<ServerInfo.Addon>> addons = new ConcurrentHashMap<>();
+
+    private Provisioner(PrintStream out) {
+        this.out = out;
+    }
+
+    public static boolean run(Path specFile, PrintStream out) throws IOException {
+        Spec spec;
+        try {
+            spec = GSON.fromJson(Files.readString(specFile, StandardCharsets.UTF_8), Spec.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid spec file '" + specFile + "': " + e.getMessage(), e);
+        }
+        if (spec == null || spec.servers() == null || spec.servers().isEmpty())
+            throw new IOException("Spec file '" + specFile + "' doesn't define any servers");
+        return new Provisioner(out).provision(spec);
+    }
+
+    private boolean provision(Spec spec) {
+        int concurrency = spec.concurrency() != null ? spec.concurrency() : DownloadScheduler.DEFAULT_CONCURRENCY;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), daemon("provision-worker"));
+        try {
+            preload(spec);
+            Set<String> names = new HashSet<>();
+            List<CompletableFuture<Result>> results = new ArrayList<>();
+            for (ServerSpec server : spec.servers()) {
+                if (server.name() == null || server.name().isBlank()) {
+                    results.add(CompletableFuture.completedFuture(Result.failure("<unnamed>", 0, "Server name cannot be empty")));
+                } else if (!names.add(server.name())) {
+                    results.add(CompletableFuture.completedFuture(Result.failure(server.name(), 0, "Server '" + server.name() + "' is defined twice")));
+                } else {
+                    results.add(provision(server, executor));
+                }
+            }
+
+            CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+            boolean success = true;
+            out.println();
+            out.println("Provisioning results:");
+            for (CompletableFuture<Result> future : results) {
+                Result result = future.join();
+                success &= result.success();
+                out.println(result.success()
+                    ? " - " + result.name() + ": OK (" + result.millis() + " ms)"
+                    : " - " + result.name() + ": FAILED (" + result.millis() + " ms) " + result.error());
+            }
+            return success;
+        } finally {
+            executor.shutdownNow();
+            resolveExecutor.shutdownNow();
+        }
+    }
+
+    // every addon repository of the spec in batched queries, instead of a few REST calls per repository
+    private void preload(Spec spec) {
+        List<GitHubAPI.Repository> repositories = new ArrayList<>(List.of(GitHubAPI.SKRIPT_REPO));
+        for (ServerSpec server : spec.servers()) {
+            if (server.template() != null || server.lock() != null || server.addons() == null)
+                continue;
+            for (AddonSpec addon : server.addons()) {
+                if (addon.repository() != null && addon.repository().indexOf('/') > 0)
+                    repositories.add(repository(addon.repository()));
+            }
+        }
+        GitHubAPI.preload(repositories);
+    }
+
+    private GitHubAPI.Repository repository(String fullName) {
+        return repositories.computeIfAbsent(fullName.toLowerCase(Locale.ENGLISH), name -> {
+            String[] parts = fullName.split("/", 2);
+            return GitHubAPI.repository(parts[0], parts[1]);
+        });
+    }
+
+    private CompletableFuture<Result> provision(ServerSpec server, ExecutorService executor) {
+        long start = System.currentTimeMillis();
+        if (server.template() != null)
+            return cloneTemplate(server, executor, start);
+        if (server.lock() != null)
+            return rebuild(server, executor, start);
+        CompletableFuture<PaperAPI.Version> paper = resolvePaper(server.paper());
+        CompletableFuture<ServerInfo.Addon> skript = resolveAddon(new AddonSpec(GitHubAPI.SKRIPT_REPO.getFullName(), server.skript(), null));
+        List<CompletableFuture<ServerInfo.Addon>> serverAddons = new ArrayList<>();
+        if (server.addons() != null) {
+            for (AddonSpec addon : server.addons())
+                serverAddons.add(resolveAddon(addon));
+        }
+
+        List<CompletableFuture<?>> dependencies = new ArrayList<>(serverAddons);
+        dependencies.add(paper);
+        dependencies.add(skript);
+        return CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+            .thenApplyAsync(ignored -> {
+                Set<ServerInfo.Addon> addons = new LinkedHashSet<>();
+                for (CompletableFuture<ServerInfo.Addon> addon : serverAddons)
+                    addons.add(addon.join());
+                ServerInfo serverInfo = new ServerInfo(server.name(), paper.join(), skript.join(), addons);
+                if (serverInfo.folder().exists())
+                    return Result.failure(server.name(), elapsed(start), "Server '" + server.name() + "' already exists");
+                try {
+                    serverInfo.setup(line -> out.println("[" + server.name() + "] " + COLORS.matcher(line).replaceAll("")));
+                    return new Result(server.name(), true, elapsed(start), null);
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    if (serverInfo.folder().exists())
+                        Main.deleteFolder(serverInfo.folder());
+                    return Result.failure(server.name(), elapsed(start), describe(e));
+                }
+            }, executor)
+            .exceptionally(throwable -> Result.failure(server.name(), elapsed(start), describe(throwable)));
+    }
+
+    // a template already pins every version, so nothing needs resolving
+    private CompletableFuture<Result> cloneTemplate(ServerSpec server, ExecutorService executor, long start) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ServerTemplate.clone(server.template(), new File(server.name()));
+                return new Result(server.name(), true, elapsed(start), null);
+            } catch (IOException | RuntimeException e) {
+                return Result.failure(server.name(), elapsed(start), describe(e));
+            }
+        }, executor);
+    }
+
+    private CompletableFuture<Result> rebuild(ServerSpec server, ExecutorService executor, long start) {
+        return CompletableFuture.supplyAsync(() -> {
+            File folder = new File(server.name());
+            if (folder.exists())
+                return Result.failure(server.name(), elapsed(start), "Server '" + server.name() + "' already exists");
+            try {
+                ServerInfo.fromLock(folder, ServerManifest.read(Path.of(server.lock())))
+                    .setup(line -> out.println("[" + server.name() + "] " + COLORS.matcher(line).replaceAll("")));
+                return new Result(server.name(), true, elapsed(start), null);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                if (folder.exists())
+                    Main.deleteFolder(folder);
+                return Result.failure(server.name(), elapsed(start), describe(e));
+            }
+        }, executor);
+    }
+
+    private CompletableFuture<PaperAPI.Version> resolvePaper(String version) {
+        String key = version == null || version.isBlank() ? LATEST : version;
+        return paperVersions.computeIfAbsent(key, ignored -> supply(() -> {
+            if (key.equalsIgnoreCase(LATEST))
+                return PaperAPI.latestVersion();
+            PaperAPI.Version paperVersion = PaperAPI.version(key);
+            if (!paperVersion.valid())
+                throw new IOException("Paper version '" + key + "' is not valid");
+            return paperVersion;
+        }));
+    }
+
+    private CompletableFuture<ServerInfo.Addon> resolveAddon(AddonSpec spec) {
+        if (spec.repository() == null || spec.repository().indexOf('/') < 1)
+            return CompletableFuture.failedFuture(new IOException("Addon repository '" + spec.repository() + "' must be in the form 'owner/name'"));
+        String version = spec.version() == null || spec.version().isBlank() ? LATEST : spec.version();
+        String key = spec.repository().toLowerCase(Locale.ENGLISH) + "@" + version + (spec.asset() != null ? "#" + spec.asset() : "");
+        return addons.computeIfAbsent(key, ignored -> supply(() -> {
+            GitHubAPI.Repository repository = repository(spec.repository());
+            GitHubAPI.Release release = version.equalsIgnoreCase(LATEST)
+                ? repository.getLatestRelease()
+                : repository.getRelease(version);
+            if (release == null)
+                throw new IOException(repository.getFullName() + " version '" + version + "' was not found");
+
+            List<GitHubAPI.Release.Asset> assets = release.getJarAssets();
+            GitHubAPI.Release.Asset asset = null;
+            if (spec.asset() != null) {
+                for (GitHubAPI.Release.Asset candidate : assets) {
+                    if (candidate.name().equals(spec.asset()))
+                        asset = candidate;
+                }
+            } else if (assets.size() == 1) {
+                asset = assets.get(0);
+            } else {
+                asset = PluginDescription.onlyPlugin(assets);
+            }
+            if (asset == null) {
+                throw new IOException("Couldn't pick a jar for " + repository.getFullName() + " " + release.tagName()
+                    + ", available: " + assets.stream().map(GitHubAPI.Release.Asset::name).toList());
+            }
+            return new ServerInfo.Addon(repository.owner().name(), repository.name(), release.tagName(), asset);
+        }));
+    }
+
+    private <T> CompletableFuture<T> supply(Resolver<T> resolver) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resolver.resolve();
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, resolveExecutor);
+    }
+
+    private static long elapsed(long start) {
+        return System.currentTimeMillis() - start;
+    }
+
+    private static String describe(Throwable throwable) {
+        while (throwable instanceof CompletionException && throwable.getCause() != null)
+            throwable = throwable.getCause();
+        return throwable.getMessage() != null ? throwable.getMessage() : throwable.toString();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Resolver<T> {
+
+        T resolve() throws IOException, InterruptedException;
+
+    }
+
+    private record Result(String name, boolean success, long millis, String error) {
+
+        private static Result failure(String name, long millis, String error) {
+            return new Result(name, false, millis, error);
+        }
+
+    }
+
+    private record Spec(Integer concurrency, List<ServerSpec> servers) {}
+
+    private record ServerSpec(String name, String template, String lock, String paper, String skript, List<AddonSpec> addons) {}
+
+    private record AddonSpec(String repository, String version, String asset) {}
+
+}
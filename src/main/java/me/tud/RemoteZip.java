@@ -0,0 +1,237 @@
+package me.tud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// reads single entries out of a remote zip with range requests: the end of central directory, the directory, then the entry
+public final class RemoteZip {
+
+    private static final int EOCD = 0x06054b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int ZIP64_EOCD = 0x06064b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int TAIL = 8 * 1024;
+    private static final int LOCAL_SLACK = 256;
+    private static final long UNKNOWN = 0xFFFFFFFFL;
+    // servers that ignore the range header send the whole file, which is only read up to this size
+    private static final int MAX_FULL_BODY = 64 * 1024 * 1024;
+
+    private static final int OK = 200;
+    private static final int PARTIAL_CONTENT = 206;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    private final URI uri;
+    private long total = -1;
+
+    private RemoteZip(URI uri) {
+        this.uri = uri;
+    }
+
+    // the content of the first of the given entries the archive has, or null if it has none of them
+    public static byte[] read(URL url, List<String> names) throws IOException, InterruptedException {
+        try {
+            return new RemoteZip(url.toURI()).read(names);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+    }
+
+    private byte[] read(List<String> names) throws IOException, InterruptedException {
+        Slice tail = fetchTail(TAIL);
+        int eocd = tail.findEndOfCentralDirectory();
+        if (eocd < 0 && tail.offset > 0) {
+            // an archive comment pushed the record further back than the first guess
+            tail = fetchTail(EOCD_SIZE + MAX_COMMENT);
+            eocd = tail.findEndOfCentralDirectory();
+        }
+        if (eocd < 0)
+            throw new IOException(uri + " is not a zip archive");
+
+        long directorySize = tail.uint(eocd + 12);
+        long directoryOffset = tail.uint(eocd + 16);
+        if (directorySize == UNKNOWN || directoryOffset == UNKNOWN) {
+            int locator = eocd - 20;
+            if (locator < 0 || tail.int32(locator) != ZIP64_LOCATOR)
+                throw new IOException(uri + " has a broken zip64 end of central directory");
+            long recordOffset = tail.int64(locator + 8);
+            Slice record = slice(tail, recordOffset, 56);
+            if (record.int32(0) != ZIP64_EOCD)
+                throw new IOException(uri + " has a broken zip64 end of central directory");
+            directorySize = record.int64(40);
+            directoryOffset = record.int64(48);
+        }
+
+        Slice directory = slice(tail, directoryOffset, directorySize);
+        Entry entry = null;
+        for (String name : names) {
+            entry = directory.findEntry(name);
+            if (entry != null)
+                break;
+        }
+        if (entry == null)
+            return null;
+
+        Slice local = slice(tail, entry.localOffset, 30 + entry.nameLength + entry.extraLength + entry.compressedSize + LOCAL_SLACK);
+        if (local.int32(0) != LOCAL_HEADER)
+            throw new IOException(uri + " has a broken local header for " + entry.name);
+        // the local extra field may differ from the central one, so the data start is only known now
+        long dataStart = 30 + local.uint16(26) + local.uint16(28);
+        if (dataStart + entry.compressedSize > local.bytes.length)
+            local = slice(tail, entry.localOffset, dataStart + entry.compressedSize);
+        return entry.decode(local.bytes, (int) dataStart, uri);
+    }
+
+    private Slice fetchTail(int length) throws IOException, InterruptedException {
+        return fetch("bytes=-" + length);
+    }
+
+    // reuses the bytes already fetched when the requested span lies inside them
+    private Slice slice(Slice known, long offset, long length) throws IOException, InterruptedException {
+        if (total >= 0)
+            length = Math.min(length, total - offset);
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IOException("Zip structure in " + uri + " is too large to fetch");
+        if (offset >= known.offset && offset + length <= known.offset + known.bytes.length) {
+            byte[] bytes = new byte[(int) length];
+            System.arraycopy(known.bytes, (int) (offset - known.offset), bytes, 0, (int) length);
+            return new Slice(offset, bytes);
+        }
+        return fetch("bytes=" + offset + "-" + (offset + length - 1));
+    }
+
+    private Slice fetch(String range) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().setHeader("Range", range).build();
+        long start = System.nanoTime();
+        int[] status = {0};
+        long[] received = {0};
+        try {
+            return RequestPolicy.DOWNLOAD.send(HttpUtils.client(), request, response -> {
+                status[0] = response.statusCode();
+                try (InputStream body = response.body()) {
+                    if (response.statusCode() == PARTIAL_CONTENT) {
+                        Matcher matcher = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+                        if (!matcher.matches())
+                            throw new IOException(uri + " sent a partial response without a usable Content-Range");
+                        byte[] bytes = body.readAllBytes();
+                        received[0] = bytes.length;
+                        total = Long.parseLong(matcher.group(3));
+                        return new Slice(Long.parseLong(matcher.group(1)), bytes);
+                    }
+                    if (response.statusCode() != OK)
+                        throw new IOException("Failed to read " + uri + ": HTTP " + response.statusCode());
+                    byte[] bytes = body.readNBytes(MAX_FULL_BODY + 1);
+                    received[0] = bytes.length;
+                    if (bytes.length > MAX_FULL_BODY)
+                        throw new IOException(uri + " doesn't support range requests and is too large to read whole");
+                    total = bytes.length;
+                    return new Slice(0, bytes);
+                }
+            });
+        } finally {
+            Metrics.request(Metrics.current(), "GET", uri, status[0], received[0], Metrics.Cache.BYPASS, start);
+        }
+    }
+
+    private record Entry(String name, int method, long compressedSize, long size, int nameLength, int extraLength, long localOffset) {
+
+        private byte[] decode(byte[] bytes, int start, URI uri) throws IOException {
+            if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE)
+                throw new IOException(name + " in " + uri + " is too large");
+            byte[] content = new byte[(int) size];
+            if (method == 0) {
+                System.arraycopy(bytes, start, content, 0, content.length);
+                return content;
+            }
+            if (method != 8)
+                throw new IOException(name + " in " + uri + " uses unsupported compression method " + method);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(bytes, start, (int) compressedSize);
+                int inflated = 0;
+                while (inflated < content.length && !inflater.finished()) {
+                    int read = inflater.inflate(content, inflated, content.length - inflated);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    inflated += read;
+                }
+                if (inflated != content.length)
+                    throw new IOException(name + " in " + uri + " inflated to " + inflated + " of " + content.length + " bytes");
+                return content;
+            } catch (DataFormatException e) {
+                throw new IOException(name + " in " + uri + " is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+    }
+
+    private record Slice(long offset, byte[] bytes) {
+
+        private ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private int int32(int position) {
+            return buffer().getInt(position);
+        }
+
+        private long uint(int position) {
+            return Integer.toUnsignedLong(buffer().getInt(position));
+        }
+
+        private int uint16(int position) {
+            return Short.toUnsignedInt(buffer().getShort(position));
+        }
+
+        private long int64(int position) {
+            return buffer().getLong(position);
+        }
+
+        // scans backwards so a comment that happens to contain the signature isn't mistaken for the record
+        private int findEndOfCentralDirectory() {
+            for (int position = bytes.length - EOCD_SIZE; position >= 0; position--) {
+                if (int32(position) == EOCD && position + EOCD_SIZE + uint16(position + 20) == bytes.length)
+                    return position;
+            }
+            return -1;
+        }
+
+        private Entry findEntry(String wanted) throws IOException {
+            int position = 0;
+            while (position + 46 <= bytes.length && int32(position) == CENTRAL_HEADER) {
+                int nameLength = uint16(position + 28);
+                int extraLength = uint16(position + 30);
+                int commentLength = uint16(position + 32);
+                String name = new String(bytes, position + 46, nameLength, StandardCharsets.UTF_8);
+                if (name.equals(wanted)) {
+                    long compressedSize = uint(position + 20);
+                    long size = uint(position + 24);
+                    long localOffset = uint(position + 42);
+                    if (compressedSize == UNKNOWN || size == UNKNOWN || localOffset == UNKNOWN)
+                        throw new IOException("Zip64 entries aren't supported: " + name);
+                    return new Entry(name, uint16(position + 10), compressedSize, size, nameLength, extraLength, localOffset);
+                }
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+            return null;
+        }
+
+    }
+
+}
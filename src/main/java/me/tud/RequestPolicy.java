@@ -0,0 +1,366 @@
+package me.tud;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+public final class RequestPolicy {
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(null, runnable, "http-watchdog", 0, false);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // hedged copies would spend rate limited quota, so GitHub only hedges when asked to
+    public static final RequestPolicy GITHUB = load("github", 15, 3, false);
+    public static final RequestPolicy PAPER = load("paper", 15, 3, true);
+    public static final RequestPolicy DOWNLOAD = load("download", 30, 5, false);
+    public static final RequestPolicy DEFAULT = load("default", 15, 2, false);
+
+    private static final int SAMPLES = 64;
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY = 50;
+    // unsigned, and short enough that the millis can't overflow
+    private static final Pattern DELTA_SECONDS = Pattern.compile("\\d{1,9}");
+
+    private final String family;
+    private final Duration timeout, readTimeout, backoff, maxBackoff;
+    private final int retries;
+    private final boolean hedge;
+    private final long[] latencies = new long[SAMPLES];
+    private int samples;
+
+    RequestPolicy(String family, Duration timeout, Duration readTimeout, int retries, Duration backoff, Duration maxBackoff, boolean hedge) {
+        this.family = family;
+        this.timeout = timeout;
+        this.readTimeout = readTimeout;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.maxBackoff = maxBackoff;
+        this.hedge = hedge;
+    }
+
+    // wizard.http.<family>.timeout/readTimeout (seconds), retries, backoff/maxBackoff (millis) and hedge
+    private static RequestPolicy load(String family, long timeout, int retries, boolean hedge) {
+        String prefix = "wizard.http." + family + ".";
+        timeout = Long.getLong(prefix + "timeout", timeout);
+        return new RequestPolicy(
+            family,
+            Duration.ofSeconds(timeout),
+            Duration.ofSeconds(Long.getLong(prefix + "readTimeout", timeout)),
+            Integer.getInteger(prefix + "retries", retries),
+            Duration.ofMillis(Long.getLong(prefix + "backoff", 250)),
+            Duration.ofMillis(Long.getLong(prefix + "maxBackoff", 10_000)),
+            Boolean.parseBoolean(System.getProperty(prefix + "hedge", String.valueOf(hedge)))
+        );
+    }
+
+    public static RequestPolicy of(URI uri) {
+        String value = uri.toString();
+        if (value.startsWith(GitHubAPI.GITHUB_ENDPOINT))
+            return GITHUB;
+        if (value.startsWith(PaperAPI.PAPER_ENDPOINT))
+            return PAPER;
+        return DEFAULT;
+    }
+
+    public String family() {
+        return family;
+    }
+
+    public int retries() {
+        return retries;
+    }
+
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    // retries failed exchanges up to the response headers, the caller owns the returned body
+    public HttpResponse<InputStream> send(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        return execute(client, request, response -> response, false, Gate.NONE);
+    }
+
+    // also retries when reading the body fails at the transport level, e.g. a stalled or reset connection
+    public <T> T send(HttpClient client, HttpRequest request, ResponseReader<T> reader) throws IOException, InterruptedException {
+        return execute(client, request, reader, true, Gate.NONE);
+    }
+
+    // the gate is passed every retry and hedge before it's sent, the first attempt is the caller's to account for
+    public <T> T send(HttpClient client, HttpRequest request, ResponseReader<T> reader, Gate gate) throws IOException, InterruptedException {
+        return execute(client, request, reader, true, gate);
+    }
+
+    private <T> T execute(HttpClient client, HttpRequest request, ResponseReader<T> reader, boolean readsBody, Gate gate) throws IOException, InterruptedException {
+        HttpRequest timed = request.timeout().isPresent() ? request : HttpRequest.newBuilder(request, (name, value) -> true).timeout(timeout).build();
+        boolean idempotent = idempotent(request);
+        for (int attempt = 1; ; attempt++) {
+            boolean last = !idempotent || attempt > retries;
+            if (attempt > 1)
+                gate.acquire();
+            HttpResponse<InputStream> response;
+            try {
+                response = hedge && safe(request) ? sendHedged(client, timed, gate) : sendTimed(client, timed);
+            } catch (IOException e) {
+                if (last)
+                    throw e;
+                pause(attempt, 0);
+                continue;
+            }
+            gate.observe(response.headers());
+            if (!last && retryable(response.statusCode())) {
+                close(response);
+                pause(attempt, Math.max(0, retryAfter(response.headers(), System.currentTimeMillis())));
+                continue;
+            }
+
+            WatchedInputStream body = new WatchedInputStream(request.uri(), response.body());
+            if (!readsBody)
+                return reader.read(new JsonResponse<>(response, body));
+            try (body) {
+                return reader.read(new JsonResponse<>(response, body));
+            } catch (IOException e) {
+                if (last || !body.failed)
+                    throw e;
+                pause(attempt, 0);
+            }
+        }
+    }
+
+    // millis until Retry-After allows another request, given as delta seconds or as an http date, -1 without a usable value
+    static long retryAfter(HttpHeaders headers, long now) {
+        String value = headers.firstValue("Retry-After").map(String::trim).orElse(null);
+        if (value == null)
+            return -1;
+        if (DELTA_SECONDS.matcher(value).matches())
+            return Long.parseLong(value) * 1000;
+        try {
+            return Math.max(0, ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - now);
+        } catch (DateTimeParseException ignored) {
+            return -1;
+        }
+    }
+
+    public void pause(int attempt) throws InterruptedException {
+        pause(attempt, 0);
+    }
+
+    // full jitter: a uniform delay between zero and the exponential step
+    private void pause(int attempt, long atLeast) throws InterruptedException {
+        long step = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempt - 1, 20));
+        Thread.sleep(Math.max(atLeast, ThreadLocalRandom.current().nextLong(step + 1)));
+    }
+
+    private HttpResponse<InputStream> sendTimed(HttpClient client, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        record(System.nanoTime() - start);
+        return response;
+    }
+
+    private HttpResponse<InputStream> sendHedged(HttpClient client, HttpRequest request, Gate gate) throws IOException, InterruptedException {
+        long delay = percentile95();
+        if (delay < 0)
+            return sendTimed(client, request);
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<InputStream>> primary = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        try {
+            HttpResponse<InputStream> response = primary.get(Math.max(delay, MIN_HEDGE_DELAY), TimeUnit.MILLISECONDS);
+            record(System.nanoTime() - start);
+            return response;
+        } catch (TimeoutException ignored) {
+            // slower than usual, race a duplicate against it
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+        try {
+            gate.acquire();
+        } catch (IOException | InterruptedException e) {
+            primary.cancel(true);
+            throw e;
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> secondary = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+        CompletableFuture<HttpResponse<InputStream>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<HttpResponse<InputStream>> future : Arrays.asList(primary, secondary)) {
+            future.whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    if (failures.incrementAndGet() == 2)
+                        winner.completeExceptionally(throwable);
+                } else if (!winner.complete(response)) {
+                    close(response);
+                }
+            });
+        }
+        try {
+            HttpResponse<InputStream> response = winner.get();
+            record(System.nanoTime() - start);
+            return response;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            primary.cancel(true);
+            secondary.cancel(true);
+        }
+    }
+
+    private synchronized void record(long nanos) {
+        latencies[samples++ % SAMPLES] = nanos / 1_000_000;
+    }
+
+    private synchronized long percentile95() {
+        int count = Math.min(samples, SAMPLES);
+        if (count < MIN_SAMPLES)
+            return -1;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(count * 0.95) - 1];
+    }
+
+    // the wizard only sends GraphQL queries, never mutations, so they're as safe to repeat as a GET
+    private static boolean idempotent(HttpRequest request) {
+        return safe(request) || request.uri().equals(GitHubGraphQL.ENDPOINT);
+    }
+
+    // only cheap reads are hedged, a GraphQL query costs its full point price every time it's sent
+    private static boolean safe(HttpRequest request) {
+        return request.method().equals("GET") || request.method().equals("HEAD");
+    }
+
+    private static boolean retryable(int status) {
+        return status == 408 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    private static void close(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {}
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof IOException exception)
+            return exception;
+        return new IOException(e.getCause());
+    }
+
+    public interface Gate {
+
+        Gate NONE = new Gate() {
+            @Override
+            public void acquire() {}
+
+            @Override
+            public void observe(HttpHeaders headers) {}
+        };
+
+        void acquire() throws IOException, InterruptedException;
+
+        // sees the headers of every response, including the ones that get retried
+        void observe(HttpHeaders headers);
+
+    }
+
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+
+        T read(HttpResponse<InputStream> response) throws IOException, InterruptedException;
+
+    }
+
+    private final class WatchedInputStream extends FilterInputStream {
+
+        private final URI uri;
+        private final ScheduledFuture<?> task;
+        private volatile long lastRead = System.nanoTime();
+        private volatile boolean timedOut;
+        private boolean failed;
+
+        private WatchedInputStream(URI uri, InputStream input) {
+            super(input);
+            this.uri = uri;
+            long period = Math.max(1, readTimeout.toMillis() / 2);
+            this.task = WATCHDOG.scheduleAtFixedRate(this::check, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        // closing the body from another thread is what unblocks a read stuck on a stalled connection
+        private void check() {
+            if (System.nanoTime() - lastRead < readTimeout.toNanos())
+                return;
+            timedOut = true;
+            task.cancel(false);
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int read = super.read();
+                return progress(read);
+            } catch (IOException e) {
+                failed = true;
+                throw timedOut ? timeout(e) : e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                int read = super.read(buffer, offset, length);
+                return progress(read);
+            } catch (IOException e) {
+                failed = true;
+                throw timedOut ? timeout(e) : e;
+            }
+        }
+
+        private int progress(int read) throws IOException {
+            if (timedOut) {
+                failed = true;
+                throw timeout(null);
+            }
+            lastRead = System.nanoTime();
+            return read;
+        }
+
+        private IOException timeout(IOException cause) {
+            HttpTimeoutException exception = new HttpTimeoutException("No data received from " + uri + " for " + readTimeout.toSeconds() + "s");
+            if (cause != null)
+                exception.initCause(cause);
+            return exception;
+        }
+
+        @Override
+        public void close() throws IOException {
+            task.cancel(false);
+            super.close();
+        }
+
+    }
+
+}
@@ -1,119 +1,260 @@
 package me.tud;
 
-import org.jline.reader.LineReader;
-
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static me.tud.Main.*;
 
 public record ServerInfo(File folder, PaperAPI.Version version, Addon skript, Set<Addon> addons) {
 
+    private static final String SKRIPT_CONFIG = "config.sk";
+    private static final ConfigPatcher SKRIPT_CONFIG_PATCHER = new ConfigPatcher(
+        ConfigPatcher.Rule.set("enable effect commands", "true"),
+        ConfigPatcher.Rule.set("allow ops to use effect commands", "true"),
+        ConfigPatcher.Rule.replace("pattern", ".*", "(?!-).*")
+    );
+
     public ServerInfo(String name, PaperAPI.Version version, Addon skript, Set<Addon> addons) {
         this(new File(name), version, skript, addons);
     }
 
-    public void setup(LineReader reader) throws IOException, InterruptedException {
-        reader.printAbove(INFO + "Setting up server..." + RESET);
-        reader.printAbove(INFO + "Creating server folder..." + RESET);
-        if (!folder.mkdir())
-            throw new IOException("Failed to create server folder");
-        reader.printAbove(SUCCESS + "Server folder created!" + RESET);
+    // everything comes pinned from the lockfile, so setting it up asks neither GitHub nor Paper anything
+    public static ServerInfo fromLock(File folder, ServerManifest lock) throws IOException {
+        ServerManifest.Paper paper = lock.paper();
+        PaperAPI.Version version = PaperAPI.pinned(paper.version(), paper.build(), url(paper.url(), "Paper " + paper.version()), paper.sha256());
+        Addon skript = null;
+        Set<Addon> addons = new LinkedHashSet<>();
+        for (ServerManifest.Plugin plugin : lock.plugins()) {
+            String[] parts = plugin.repository().split("/", 2);
+            if (parts.length != 2)
+                throw new IOException("Invalid repository '" + plugin.repository() + "' in lockfile");
+            Addon addon = new Addon(parts[0], parts[1], plugin.version(), url(plugin.url(), plugin.nameAndVersion()), plugin.sha256());
+            if (skript == null && plugin.repository().equalsIgnoreCase(GitHubAPI.SKRIPT_REPO.getFullName())) skript = addon;
+            else addons.add(addon);
+        }
+        if (skript == null)
+            throw new IOException("Lockfile doesn't pin a Skript version");
+        return new ServerInfo(folder, version, skript, addons);
+    }
 
-        reader.printAbove(INFO + "Creating plugins folder..." + RESET);
-        File pluginsFolder = new File(folder, "plugins");
-        if (!pluginsFolder.mkdir())
-            throw new IOException("Failed to create plugins folder");
-        reader.printAbove(SUCCESS + "Plugins folder created!" + RESET);
-
-        reader.printAbove(INFO + "Downloading server..." + RESET);
-        downloadPaper(folder);
-        reader.printAbove(SUCCESS + "Server downloaded!" + RESET);
-
-        reader.printAbove(INFO + "Downloading " + skript.nameAndVersion() + "..." + RESET);
-        File skriptFile = skript.download(pluginsFolder);
-        reader.printAbove(SUCCESS + skript.nameAndVersion() + " downloaded!" + RESET);
-
-        reader.printAbove(INFO + "Configuring Skript..." + RESET);
-        config:
-        try (JarFile jarFile = new JarFile(skriptFile)) {
-            JarEntry jarEntry = jarFile.getJarEntry("config.sk");
-            if (jarEntry == null) {
-                reader.printAbove(WARN + "Failed to find config.sk in Skript jar!" + RESET);
-                break config;
-            }
-            File skriptFolder = new File(pluginsFolder, "Skript");
-            if (!skriptFolder.exists() && !skriptFolder.mkdir()) {
-                reader.printAbove(WARN + "Failed to create Skript folder!" + RESET);
-                break config;
-            }
-            File configFile = new File(skriptFolder, "config.sk");
-            try (InputStream input = jarFile.getInputStream(jarEntry)) {
-                String content = new String(input.readAllBytes());
-                content = content
-                    .replace("enable effect commands: false", "enable effect commands: true")
-                    .replace("allow ops to use effect commands: false", "allow ops to use effect commands: true")
-                    .replace("pattern: .*", "pattern: (?!-).*");
-                Files.write(configFile.getAbsoluteFile().toPath(), content.getBytes());
+    private static URL url(String url, String artifact) throws IOException {
+        if (url == null)
+            throw new IOException("Lockfile doesn't pin a download url for " + artifact);
+        return new URL(url);
+    }
+
+    public void setup(Consumer<String> output) throws IOException, InterruptedException {
+        SetupReport report = new SetupReport(this);
+        boolean existed = folder.exists();
+        Throwable failure = null;
+        try (Metrics.Scope ignored = Metrics.bind(report)) {
+            runSetup(output);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            report.complete(failure);
+            if (!existed && folder.isDirectory()) {
+                try {
+                    report.write(folder);
+                } catch (IOException e) {
+                    output.accept(WARN + "Failed to write " + SetupReport.FILE_NAME + ": " + e.getMessage() + RESET);
+                }
             }
-            reader.printAbove(SUCCESS + "Skript configured!" + RESET);
         }
+    }
+
+    private void runSetup(Consumer<String> output) throws IOException, InterruptedException {
+        output.accept(INFO + "Setting up server..." + RESET);
+        File pluginsFolder = new File(folder, "plugins");
+        Metrics.phase("mkdirs", () -> {
+            output.accept(INFO + "Creating server folder..." + RESET);
+            if (!folder.mkdir())
+                throw new IOException("Failed to create server folder");
+            output.accept(SUCCESS + "Server folder created!" + RESET);
+
+            output.accept(INFO + "Creating plugins folder..." + RESET);
+            if (!pluginsFolder.mkdir())
+                throw new IOException("Failed to create plugins folder");
+            output.accept(SUCCESS + "Plugins folder created!" + RESET);
+            return 0;
+        });
+
+        try (DownloadScheduler scheduler = new DownloadScheduler()) {
+            scheduler.submit(() -> {
+                output.accept(INFO + "Downloading server..." + RESET);
+                Metrics.phase("download paper " + version.version(), () -> downloadPaper(folder).length());
+                output.accept(SUCCESS + "Server downloaded!" + RESET);
+                if (PaperclipCache.ENABLED)
+                    prepatchPaper(output);
+            });
+
+            scheduler.submit(() -> {
+                output.accept(INFO + "Downloading " + skript.nameAndVersion() + "..." + RESET);
+                AtomicBoolean configFound = new AtomicBoolean();
+                skript.download(pluginsFolder, (name, content) -> {
+                    if (!name.equals(SKRIPT_CONFIG))
+                        return;
+                    configFound.set(true);
+                    Metrics.phase("configure skript", () -> configureSkript(output, content, pluginsFolder));
+                });
+                output.accept(SUCCESS + skript.nameAndVersion() + " downloaded!" + RESET);
+                if (!configFound.get())
+                    output.accept(WARN + "Failed to find " + SKRIPT_CONFIG + " in Skript jar!" + RESET);
+            });
 
-        if (!addons.isEmpty()) {
-            reader.printAbove(INFO + "Downloading addons..." + RESET);
             for (Addon addon : addons) {
-                reader.printAbove(INFO + "Downloading " + addon.nameAndVersion() + "..." + RESET);
-                addon.download(pluginsFolder);
-                reader.printAbove(SUCCESS + addon.nameAndVersion() + " downloaded!" + RESET);
+                scheduler.submit(() -> {
+                    output.accept(INFO + "Downloading " + addon.nameAndVersion() + "..." + RESET);
+                    addon.download(pluginsFolder);
+                    output.accept(SUCCESS + addon.nameAndVersion() + " downloaded!" + RESET);
+                });
             }
-            reader.printAbove(SUCCESS + "Addons downloaded!" + RESET);
+
+            output.accept(INFO + "Creating eula..." + RESET);
+            Metrics.phase("eula", () -> createEula(folder));
+            output.accept(SUCCESS + "Eula created!" + RESET);
+
+            output.accept(INFO + "Creating run scripts..." + RESET);
+            Metrics.phase("run script", () -> createRunScript(folder));
+            output.accept(SUCCESS + "Run scripts created!" + RESET);
+
+            Metrics.phase("await downloads", () -> {
+                scheduler.await();
+                return 0;
+            });
         }
+        Metrics.phase("manifest", () -> writeManifest(folder));
 
-        reader.printAbove(INFO + "Creating eula..." + RESET);
-        createEula(folder);
-        reader.printAbove(SUCCESS + "Eula created!" + RESET);
+        if (LaunchProfile.TRAIN_ARCHIVE) {
+            output.accept(INFO + "Creating class data sharing archive, this boots the server once..." + RESET);
+            try {
+                Metrics.phase("appcds training", () -> launchProfile().train(folder, output));
+                output.accept(SUCCESS + "Class data sharing archive created!" + RESET);
+            } catch (IOException e) {
+                output.accept(WARN + "Failed to create the class data sharing archive, the first start will create it: " + e.getMessage() + RESET);
+            }
+        }
+        if (!addons.isEmpty())
+            output.accept(SUCCESS + "Addons downloaded!" + RESET);
 
-        reader.printAbove(INFO + "Creating run script..." + RESET);
-        createRunScript(folder);
-        reader.printAbove(SUCCESS + "Run script created!" + RESET);
+        output.accept(SUCCESS + "Server setup complete!" + RESET);
+    }
 
-        reader.printAbove(SUCCESS + "Server setup complete!" + RESET);
+    private long configureSkript(Consumer<String> output, InputStream content, File pluginsFolder) throws IOException {
+        output.accept(INFO + "Configuring Skript..." + RESET);
+        File skriptFolder = new File(pluginsFolder, "Skript");
+        if (!skriptFolder.exists() && !skriptFolder.mkdir()) {
+            output.accept(WARN + "Failed to create Skript folder!" + RESET);
+            return 0;
+        }
+        Path configFile = new File(skriptFolder, SKRIPT_CONFIG).toPath();
+        try (OutputStream configOutput = Files.newOutputStream(configFile)) {
+            SKRIPT_CONFIG_PATCHER.patch(content, configOutput);
+        }
+        output.accept(SUCCESS + "Skript configured!" + RESET);
+        return Files.size(configFile);
+    }
+
+    private void prepatchPaper(Consumer<String> output) throws IOException, InterruptedException {
+        output.accept(INFO + "Pre-patching server..." + RESET);
+        try {
+            Metrics.phase("prepatch paper " + version.version(), () -> PaperclipCache.install(version.downloadURL(), folder));
+            output.accept(SUCCESS + "Server pre-patched!" + RESET);
+        } catch (IOException e) {
+            output.accept(WARN + "Failed to pre-patch server, it will patch itself on first start: " + e.getMessage() + RESET);
+        }
     }
 
-    private void downloadPaper(File directory) throws IOException, InterruptedException {
-        download(version.downloadURL(), new File(directory, "server.jar"));
+    private File downloadPaper(File directory) throws IOException, InterruptedException {
+        File file = new File(directory, "server.jar");
+        download("Paper " + version.version() + " build " + version.latestBuild(), version.downloadURL(), file, version.sha256(), -1, null);
+        return file;
     }
 
-    private void createEula(File directory) throws IOException {
+    private long createEula(File directory) throws IOException {
         File eula = new File(directory, "eula.txt");
+        byte[] bytes = "eula=true".getBytes();
         try (FileOutputStream output = new FileOutputStream(eula)) {
-            output.write("eula=true".getBytes());
+            output.write(bytes);
         }
+        return bytes.length;
     }
 
-    private void createRunScript(File directory) throws IOException {
-        File run = new File(directory, "run.bat");
-        try (FileOutputStream output = new FileOutputStream(run)) {
-            output.write(RUN_SCRIPT.getBytes());
-        }
+    private long createRunScript(File directory) throws IOException, InterruptedException {
+        return launchProfile().write(directory);
     }
 
-    public record Addon(String name, String version, URL downloadURL) {
+    private LaunchProfile launchProfile() throws IOException, InterruptedException {
+        return LaunchProfile.detect(LaunchProfile.archiveName(version.version(), version.latestBuild()));
+    }
+
+    private long writeManifest(File directory) throws IOException, InterruptedException {
+        List<ServerManifest.Plugin> plugins = new ArrayList<>();
+        plugins.add(skript.manifestEntry());
+        for (Addon addon : addons)
+            plugins.add(addon.manifestEntry());
+        URL paperURL = version.downloadURL();
+        String paperSha256 = version.sha256() != null ? version.sha256() : JarStore.digest(paperURL);
+        ServerManifest.Paper paper = new ServerManifest.Paper(version.version(), version.latestBuild(), paperURL.toString(), "server.jar", paperSha256);
+        new ServerManifest(paper, plugins).write(directory);
+        return new File(directory, ServerManifest.FILE_NAME).length();
+    }
+
+    // sha256 is known for pinned addons and assets GitHub published a digest for, size is -1 when unknown
+    public record Addon(String owner, String name, String version, URL downloadURL, String sha256, long size) {
+
+        public Addon(String owner, String name, String version, URL downloadURL, String sha256) {
+            this(owner, name, version, downloadURL, sha256, -1);
+        }
+
+        public Addon(String owner, String name, String version, GitHubAPI.Release.Asset asset) {
+            this(owner, name, version, asset.downloadURL(), asset.sha256(), asset.size());
+        }
+
+        public String fullName() {
+            return owner + "/" + name;
+        }
 
         public String nameAndVersion() {
             return name + " " + version;
         }
 
-        public File download(File directory) throws IOException {
-            File file = new File(directory, name + "-" + version + ".jar");
-            ServerInfo.download(downloadURL, file);
+        public String fileName() {
+            return name + "-" + version + ".jar";
+        }
+
+        public ServerManifest.Plugin manifestEntry() throws IOException {
+            String path = downloadURL.getPath();
+            String asset = URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), StandardCharsets.UTF_8);
+            String hash = sha256 != null ? sha256 : JarStore.digest(downloadURL);
+            return new ServerManifest.Plugin(fullName(), version, asset, downloadURL.toString(), "plugins/" + fileName(), hash);
+        }
+
+        public File download(File directory) throws IOException, InterruptedException {
+            return download(directory, null);
+        }
+
+        public File download(File directory, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+            File file = new File(directory, fileName());
+            Metrics.phase("download " + nameAndVersion(), () -> {
+                ServerInfo.download(nameAndVersion(), downloadURL, file, sha256, size, handler);
+                return file.length();
+            });
             return file;
         }
 
@@ -132,9 +273,12 @@ public record ServerInfo(File folder, PaperAPI.Version version, Addon skript, Se
 
     }
     
-    private static void download(URL url, File output) throws IOException {
-        try (InputStream input = url.openStream(); FileOutputStream outputStream = new FileOutputStream(output)) {
-            input.transferTo(outputStream);
+    // failures name the artifact, a server that won't boot because of a bad jar is much harder to trace back
+    private static void download(String artifact, URL url, File output, String sha256, long size, ZipStream.EntryHandler handler) throws IOException, InterruptedException {
+        try (ProgressDisplay.Transfer ignored = ProgressDisplay.track(artifact)) {
+            JarStore.install(url, output.toPath(), sha256, size, handler);
+        } catch (IOException e) {
+            throw new IOException("Failed to download " + artifact + ": " + e.getMessage(), e);
         }
     }
 
@@ -0,0 +1,69 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+// pins what the wizard installed into a server folder, read back by upgrades and rebuilds
+public record ServerManifest(Paper paper, List<Plugin> plugins) {
+
+    public static final String FILE_NAME = "server-wizard.lock";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    public static boolean exists(File folder) {
+        return new File(folder, FILE_NAME).isFile();
+    }
+
+    public static ServerManifest read(File folder) throws IOException {
+        Path file = new File(folder, FILE_NAME).toPath();
+        if (!Files.isRegularFile(file))
+            throw new IOException("'" + folder.getName() + "' has no " + FILE_NAME + ", it wasn't set up by this wizard");
+        return read(file);
+    }
+
+    // either the lockfile itself or a server folder holding one
+    public static ServerManifest read(Path file) throws IOException {
+        if (Files.isDirectory(file))
+            file = file.resolve(FILE_NAME);
+        ServerManifest manifest;
+        try {
+            manifest = GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), ServerManifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid lockfile '" + file + "': " + e.getMessage(), e);
+        }
+        if (manifest == null || manifest.paper() == null || manifest.plugins() == null)
+            throw new IOException("Incomplete lockfile '" + file + "'");
+        return manifest;
+    }
+
+    // written next to the jars it describes, so it's replaced atomically as well
+    public void write(File folder) throws IOException {
+        Path temp = Files.createTempFile(folder.toPath(), FILE_NAME, ".tmp");
+        try {
+            Files.writeString(temp, GSON.toJson(this), StandardCharsets.UTF_8);
+            Files.move(temp, new File(folder, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public record Paper(String version, int build, String url, String file, String sha256) {}
+
+    // asset is the release asset's file name, used to pick the matching asset of a newer release
+    public record Plugin(String repository, String version, String asset, String url, String file, String sha256) {
+
+        public String nameAndVersion() {
+            return repository.substring(repository.indexOf('/') + 1) + " " + version;
+        }
+
+    }
+
+}
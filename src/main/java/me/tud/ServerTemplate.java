@@ -0,0 +1,240 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public final class ServerTemplate {
+
+    public static final Path FOLDER = Main.DATA_FOLDER.resolve("templates");
+    public static final String MANIFEST = "template.json";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int PARALLELISM = Integer.getInteger("wizard.template.parallelism", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    // file system calls block, so the pool is sized for IO rather than for the cores
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    // never modified in place once written, so templates and clones can share them
+    private static final Set<String> IMMUTABLE_FOLDERS = Set.of("libraries", "versions", "cache");
+    private static final Set<String> SKIPPED_FOLDERS = Set.of("logs", "crash-reports", "debug");
+    private static final Set<String> SKIPPED_FILES = Set.of(SetupReport.FILE_NAME, "session.lock");
+
+    private ServerTemplate() {
+        throw new UnsupportedOperationException();
+    }
+
+    public static boolean validName(String name) {
+        return name != null && NAME.matcher(name).matches() && !name.startsWith(".");
+    }
+
+    public static boolean exists(String name) {
+        return validName(name) && Files.isRegularFile(FOLDER.resolve(name).resolve(MANIFEST));
+    }
+
+    public static List<String> list() throws IOException {
+        if (!Files.isDirectory(FOLDER))
+            return List.of();
+        try (Stream<Path> stream = Files.list(FOLDER)) {
+            return stream.filter(path -> Files.isRegularFile(path.resolve(MANIFEST)))
+                .map(path -> path.getFileName().toString())
+                .sorted()
+                .toList();
+        }
+    }
+
+    public static Manifest manifest(String name) throws IOException {
+        Path file = FOLDER.resolve(requireValid(name)).resolve(MANIFEST);
+        if (!Files.isRegularFile(file))
+            throw new IOException("Template '" + name + "' doesn't exist");
+        try {
+            return GSON.fromJson(Files.readString(file, StandardCharsets.UTF_8), Manifest.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Invalid template manifest '" + file + "': " + e.getMessage(), e);
+        }
+    }
+
+    // snapshots the server folder into the template, replacing an existing template of the same name
+    public static Result save(File serverFolder, String name, boolean includeWorlds) throws IOException {
+        requireValid(name);
+        Path source = serverFolder.toPath();
+        if (!Files.isDirectory(source))
+            throw new IOException("Server folder '" + serverFolder + "' doesn't exist");
+        Set<Path> worlds = worlds(source);
+        Files.createDirectories(FOLDER);
+        Path work = Files.createTempDirectory(FOLDER, "." + name + ".");
+        try {
+            Result result = transfer(source, work, relative -> included(relative, worlds, includeWorlds));
+            Manifest manifest = new Manifest(serverFolder.getName(), Instant.now().toString(), includeWorlds && !worlds.isEmpty(),
+                result.linked() + result.copied(), result.bytes());
+            Files.writeString(work.resolve(MANIFEST), GSON.toJson(manifest), StandardCharsets.UTF_8);
+
+            Path template = FOLDER.resolve(name);
+            Path previous = null;
+            if (Files.exists(template)) {
+                previous = FOLDER.resolve("." + name + ".old." + System.nanoTime());
+                Files.move(template, previous, StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(work, template, StandardCopyOption.ATOMIC_MOVE);
+            if (previous != null)
+                Main.deleteFolder(previous.toFile());
+            return result;
+        } finally {
+            if (Files.exists(work))
+                Main.deleteFolder(work.toFile());
+        }
+    }
+
+    // stamps out a new server from the template, the target folder must not exist yet
+    public static Result clone(String name, File serverFolder) throws IOException {
+        Path template = FOLDER.resolve(requireValid(name));
+        if (!Files.isRegularFile(template.resolve(MANIFEST)))
+            throw new IOException("Template '" + name + "' doesn't exist");
+        if (serverFolder.exists())
+            throw new IOException("Server '" + serverFolder.getName() + "' already exists");
+        try {
+            return transfer(template, serverFolder.toPath(), relative -> !relative.toString().equals(MANIFEST));
+        } catch (IOException | RuntimeException e) {
+            if (serverFolder.exists())
+                Main.deleteFolder(serverFolder);
+            throw e;
+        }
+    }
+
+    private static String requireValid(String name) throws IOException {
+        if (!validName(name))
+            throw new IOException("Invalid template name '" + name + "', use letters, digits, '.', '_' and '-'");
+        return name;
+    }
+
+    // a world is any top level folder holding a level.dat
+    private static Set<Path> worlds(Path serverFolder) throws IOException {
+        try (Stream<Path> stream = Files.list(serverFolder)) {
+            return stream.filter(path -> Files.isRegularFile(path.resolve("level.dat")))
+                .map(serverFolder::relativize)
+                .collect(Collectors.toUnmodifiableSet());
+        }
+    }
+
+    private static boolean included(Path relative, Set<Path> worlds, boolean includeWorlds) {
+        String top = relative.getName(0).toString();
+        if (SKIPPED_FOLDERS.contains(top) || SKIPPED_FILES.contains(relative.getFileName().toString()))
+            return false;
+        return includeWorlds || !worlds.contains(relative.getName(0));
+    }
+
+    static boolean immutable(Path relative) {
+        String name = relative.getFileName().toString();
+        return name.endsWith(".jar") || name.endsWith(".jsa") || IMMUTABLE_FOLDERS.contains(relative.getName(0).toString());
+    }
+
+    private static Result transfer(Path source, Path target, Predicate<Path> filter) throws IOException {
+        Counters counters = new Counters();
+        try {
+            POOL.invoke(new Transfer(source, target, Path.of(""), filter, counters, true));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new Result(counters.linked.get(), counters.copied.get(), counters.bytes.get());
+    }
+
+    public record Result(int linked, int copied, long bytes) {}
+
+    public record Manifest(String source, String createdAt, boolean worlds, int files, long bytes) {}
+
+    private static final class Counters {
+
+        private final AtomicInteger linked = new AtomicInteger();
+        private final AtomicInteger copied = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+
+    }
+
+    // every directory and file is its own task, so one huge region folder still fans out across the pool
+    private static final class Transfer extends RecursiveAction {
+
+        private final Path sourceRoot, targetRoot, relative;
+        private final Predicate<Path> filter;
+        private final Counters counters;
+        private final boolean directory;
+
+        private Transfer(Path sourceRoot, Path targetRoot, Path relative, Predicate<Path> filter, Counters counters, boolean directory) {
+            this.sourceRoot = sourceRoot;
+            this.targetRoot = targetRoot;
+            this.relative = relative;
+            this.filter = filter;
+            this.counters = counters;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (directory) {
+                    walk();
+                } else {
+                    transfer();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void walk() throws IOException {
+            Files.createDirectories(targetRoot.resolve(relative));
+            List<Transfer> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(sourceRoot.resolve(relative))) {
+                for (Path path : stream) {
+                    Path child = relative.resolve(path.getFileName().toString());
+                    if (!filter.test(child))
+                        continue;
+                    children.add(new Transfer(sourceRoot, targetRoot, child, filter, counters, Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)));
+                }
+            }
+            invokeAll(children);
+        }
+
+        private void transfer() throws IOException {
+            Path source = sourceRoot.resolve(relative);
+            Path target = targetRoot.resolve(relative);
+            if (Files.isSymbolicLink(source)) {
+                Files.copy(source, target, LinkOption.NOFOLLOW_LINKS);
+                counters.copied.incrementAndGet();
+                return;
+            }
+            long size = Files.size(source);
+            if (immutable(relative)) {
+                JarStore.link(source, target);
+                counters.linked.incrementAndGet();
+            } else {
+                Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+                counters.copied.incrementAndGet();
+            }
+            counters.bytes.addAndGet(size);
+        }
+
+    }
+
+}
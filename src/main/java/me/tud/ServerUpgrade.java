@@ -0,0 +1,261 @@
+package me.tud;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+import static me.tud.Main.*;
+
+public final class ServerUpgrade {
+
+    private static final Pattern VERSION = Pattern.compile("\\d+(\\.\\d+)*");
+
+    private final File folder;
+    private final Consumer<String> output;
+    private final ServerManifest manifest;
+
+    private ServerUpgrade(File folder, Consumer<String> output, ServerManifest manifest) {
+        this.folder = folder;
+        this.output = output;
+        this.manifest = manifest;
+    }
+
+    // brings the server's jars up to the latest Paper build and plugin releases, returns how many were replaced
+    public static int run(File folder, Consumer<String> output) throws IOException, InterruptedException {
+        return new ServerUpgrade(folder, output, ServerManifest.read(folder)).upgrade();
+    }
+
+    private int upgrade() throws IOException, InterruptedException {
+        output.accept(INFO + "Checking " + folder.getName() + " for updates..." + RESET);
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "upgrade-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        PaperUpdate paperUpdate;
+        List<PluginUpdate> pluginUpdates = new ArrayList<>();
+        try (HttpCache.Scope ignored = HttpCache.revalidate()) {
+            CompletableFuture<PaperUpdate> paper = supply(this::resolvePaper, executor);
+            List<GitHubAPI.Repository> repositories = new ArrayList<>();
+            for (ServerManifest.Plugin plugin : manifest.plugins()) {
+                String[] parts = plugin.repository().split("/", 2);
+                repositories.add(GitHubAPI.repository(parts[0], parts[1]));
+            }
+            GitHubAPI.preload(repositories);
+            List<CompletableFuture<PluginUpdate>> plugins = new ArrayList<>();
+            for (int i = 0; i < repositories.size(); i++) {
+                ServerManifest.Plugin plugin = manifest.plugins().get(i);
+                GitHubAPI.Repository repository = repositories.get(i);
+                plugins.add(supply(() -> resolvePlugin(plugin, repository), executor));
+            }
+            paperUpdate = join(paper);
+            for (CompletableFuture<PluginUpdate> plugin : plugins) {
+                PluginUpdate update = join(plugin);
+                if (update != null)
+                    pluginUpdates.add(update);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (paperUpdate == null && pluginUpdates.isEmpty()) {
+            output.accept(SUCCESS + folder.getName() + " is up to date!" + RESET);
+            return 0;
+        }
+
+        ServerManifest.Paper paper = manifest.paper();
+        List<ServerManifest.Plugin> plugins = new ArrayList<>(manifest.plugins());
+        try (DownloadScheduler scheduler = new DownloadScheduler()) {
+            if (paperUpdate != null)
+                scheduler.submit(() -> paperUpdate.result = upgradePaper(paperUpdate));
+            for (PluginUpdate update : pluginUpdates)
+                scheduler.submit(() -> update.result = upgradePlugin(update));
+            scheduler.await();
+        }
+
+        if (paperUpdate != null) {
+            paper = paperUpdate.result;
+            if (paper.build() != manifest.paper().build())
+                relaunch(manifest.paper(), paper, paperUpdate.url);
+        }
+        for (PluginUpdate update : pluginUpdates)
+            plugins.set(plugins.indexOf(update.installed), update.result);
+        new ServerManifest(paper, plugins).write(folder);
+
+        int replaced = pluginUpdates.size() + (paperUpdate != null ? 1 : 0);
+        output.accept(SUCCESS + "Upgraded " + replaced + " jar" + (replaced == 1 ? "" : "s") + " in " + folder.getName() + "!" + RESET);
+        return replaced;
+    }
+
+    private PaperUpdate resolvePaper() throws IOException, InterruptedException {
+        ServerManifest.Paper installed = manifest.paper();
+        PaperAPI.Version version = PaperAPI.version(installed.version());
+        if (!version.valid())
+            throw new IOException("Paper version '" + installed.version() + "' has no builds anymore");
+        int build = version.latestBuild();
+        // an experimental build newer than the latest stable one is kept rather than downgraded
+        if (build <= installed.build()) {
+            if (JarStore.matches(resolve(installed.file()), installed.sha256()))
+                return null;
+            return new PaperUpdate(installed.build(), new URL(installed.url()), installed.sha256());
+        }
+        return new PaperUpdate(build, version.downloadURL(), version.sha256());
+    }
+
+    private PluginUpdate resolvePlugin(ServerManifest.Plugin installed, GitHubAPI.Repository repository) throws IOException, InterruptedException {
+        GitHubAPI.Release release = repository.getLatestRelease();
+        if (release == null) {
+            output.accept(WARN + repository.getFullName() + " has no latest release, keeping " + installed.version() + RESET);
+            return null;
+        }
+        if (release.tagName().equals(installed.version()) && JarStore.matches(resolve(installed.file()), installed.sha256()))
+            return null;
+        GitHubAPI.Release.Asset asset = pickAsset(release, installed.asset());
+        return new PluginUpdate(installed, repository, release.tagName(), asset);
+    }
+
+    // the asset whose name matches the installed one once version numbers are taken out, e.g. Skript-2.8.0.jar and Skript-2.9.1.jar
+    private static GitHubAPI.Release.Asset pickAsset(GitHubAPI.Release release, String installed) throws IOException, InterruptedException {
+        List<GitHubAPI.Release.Asset> assets = release.getJarAssets();
+        if (assets.size() == 1)
+            return assets.get(0);
+        if (installed != null) {
+            String pattern = VERSION.matcher(installed).replaceAll("");
+            for (GitHubAPI.Release.Asset asset : assets) {
+                if (VERSION.matcher(asset.name()).replaceAll("").equals(pattern))
+                    return asset;
+            }
+        }
+        GitHubAPI.Release.Asset plugin = PluginDescription.onlyPlugin(assets);
+        if (plugin != null)
+            return plugin;
+        throw new IOException("Couldn't pick a jar for " + release.repository().getFullName() + " " + release.tagName()
+            + ", available: " + assets.stream().map(GitHubAPI.Release.Asset::name).toList());
+    }
+
+    private ServerManifest.Paper upgradePaper(PaperUpdate update) throws IOException, InterruptedException {
+        ServerManifest.Paper installed = manifest.paper();
+        output.accept(INFO + (update.build == installed.build()
+            ? "Repairing Paper " + installed.version() + " build " + installed.build() + "..."
+            : "Upgrading Paper " + installed.version() + " build " + installed.build() + " -> " + update.build + "...") + RESET);
+        Path object = fetch("download paper " + installed.version() + " build " + update.build, "Paper " + installed.version() + " build " + update.build, update.url, update.sha256, -1);
+        JarStore.replace(object, resolve(installed.file()));
+        output.accept(SUCCESS + "Paper upgraded to build " + update.build + "!" + RESET);
+        return new ServerManifest.Paper(installed.version(), update.build, update.url.toString(), installed.file(), JarStore.objectHash(object));
+    }
+
+    private ServerManifest.Plugin upgradePlugin(PluginUpdate update) throws IOException, InterruptedException {
+        ServerManifest.Plugin installed = update.installed;
+        String name = update.repository.name();
+        output.accept(INFO + (update.version.equals(installed.version())
+            ? "Repairing " + installed.nameAndVersion() + "..."
+            : "Upgrading " + installed.nameAndVersion() + " -> " + update.version + "...") + RESET);
+        Path object = fetch("download " + name + " " + update.version, name + " " + update.version, update.asset.downloadURL(), update.asset.sha256(), update.asset.size());
+        String file = "plugins/" + name + "-" + update.version + ".jar";
+        JarStore.replace(object, resolve(file));
+        // the new jar is in place before the old one goes, so a restart never sees the plugin missing
+        if (!file.equals(installed.file()))
+            Files.deleteIfExists(resolve(installed.file()));
+        output.accept(SUCCESS + name + " upgraded to " + update.version + "!" + RESET);
+        return new ServerManifest.Plugin(installed.repository(), update.version, update.asset.name(), update.asset.downloadURL().toString(), file, JarStore.objectHash(object));
+    }
+
+    // a new build invalidates the class data sharing archive, so the run scripts point at a fresh one
+    private void relaunch(ServerManifest.Paper previous, ServerManifest.Paper current, URL url) throws IOException, InterruptedException {
+        Files.deleteIfExists(resolve(LaunchProfile.archiveName(previous.version(), previous.build())));
+        LaunchProfile.detect(LaunchProfile.archiveName(current.version(), current.build())).write(folder);
+        if (!PaperclipCache.ENABLED)
+            return;
+        try {
+            PaperclipCache.install(url, folder);
+        } catch (IOException e) {
+            output.accept(WARN + "Failed to pre-patch server, it will patch itself on first start: " + e.getMessage() + RESET);
+        }
+    }
+
+    private static Path fetch(String phase, String artifact, URL url, String sha256, long size) throws IOException, InterruptedException {
+        Path[] object = new Path[1];
+        try (ProgressDisplay.Transfer ignored = ProgressDisplay.track(artifact)) {
+            Metrics.phase(phase, () -> Files.size(object[0] = JarStore.fetch(url, sha256, size)));
+        }
+        return object[0];
+    }
+
+    private Path resolve(String file) {
+        return folder.toPath().resolve(file);
+    }
+
+    private static <T> CompletableFuture<T> supply(Resolver<T> resolver, ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resolver.resolve();
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException exception)
+                throw exception;
+            if (e.getCause() instanceof InterruptedException exception)
+                throw exception;
+            if (e.getCause() instanceof RuntimeException exception)
+                throw exception;
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Resolver<T> {
+
+        T resolve() throws IOException, InterruptedException;
+
+    }
+
+    private static final class PaperUpdate {
+
+        private final int build;
+        private final URL url;
+        private final String sha256;
+        private ServerManifest.Paper result;
+
+        private PaperUpdate(int build, URL url, String sha256) {
+            this.build = build;
+            this.url = url;
+            this.sha256 = sha256;
+        }
+
+    }
+
+    private static final class PluginUpdate {
+
+        private final ServerManifest.Plugin installed;
+        private final GitHubAPI.Repository repository;
+        private final String version;
+        private final GitHubAPI.Release.Asset asset;
+        private ServerManifest.Plugin result;
+
+        private PluginUpdate(ServerManifest.Plugin installed, GitHubAPI.Repository repository, String version, GitHubAPI.Release.Asset asset) {
+            this.installed = installed;
+            this.repository = repository;
+            this.version = version;
+            this.asset = asset;
+        }
+
+    }
+
+}
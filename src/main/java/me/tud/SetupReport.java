@@ -0,0 +1,81 @@
+package me.tud;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class SetupReport {
+
+    public static final String FILE_NAME = "setup-report.json";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private final String server;
+    private final String paper;
+    private final String skript;
+    private final List<String> addons = new ArrayList<>();
+    private final String startedAt = Instant.now().toString();
+    private final transient long start = System.nanoTime();
+    private long totalMillis;
+    private boolean success;
+    private String error;
+    private Totals totals;
+    private final List<Phase> phases = new ArrayList<>();
+    private final List<Request> requests = new ArrayList<>();
+
+    public SetupReport(ServerInfo serverInfo) {
+        this.server = serverInfo.folder().getName();
+        this.paper = serverInfo.version().version();
+        this.skript = serverInfo.skript().version();
+        for (ServerInfo.Addon addon : serverInfo.addons())
+            addons.add(addon.nameAndVersion());
+    }
+
+    public String server() {
+        return server;
+    }
+
+    synchronized void phase(String name, long phaseStart, long nanos, long bytes, boolean success) {
+        phases.add(new Phase(name, (phaseStart - start) / 1_000_000, nanos / 1_000_000, bytes, throughput(bytes, nanos), success));
+    }
+
+    synchronized void request(String method, URI uri, int status, long bytes, Metrics.Cache cache, long nanos) {
+        requests.add(new Request(method, uri.toString(), status, cache.label(), nanos / 1_000_000, bytes, throughput(bytes, nanos)));
+    }
+
+    public synchronized void complete(Throwable failure) {
+        totalMillis = (System.nanoTime() - start) / 1_000_000;
+        success = failure == null;
+        error = failure == null ? null : failure.getMessage() != null ? failure.getMessage() : failure.toString();
+        int cacheHits = 0;
+        long networkBytes = 0;
+        for (Request request : requests) {
+            if (request.cache().equals(Metrics.Cache.HIT.label()) || request.cache().equals(Metrics.Cache.REVALIDATED.label()))
+                cacheHits++;
+            networkBytes += request.bytes();
+        }
+        totals = new Totals(requests.size(), cacheHits, networkBytes);
+    }
+
+    public synchronized void write(File folder) throws IOException {
+        Files.writeString(new File(folder, FILE_NAME).toPath(), GSON.toJson(this), StandardCharsets.UTF_8);
+    }
+
+    private static long throughput(long bytes, long nanos) {
+        return nanos > 0 ? bytes * 1_000_000_000L / nanos : 0;
+    }
+
+    private record Phase(String name, long offsetMillis, long millis, long bytes, long bytesPerSecond, boolean success) {}
+
+    private record Request(String method, String uri, int status, String cache, long millis, long bytes, long bytesPerSecond) {}
+
+    private record Totals(int requests, int cacheHits, long networkBytes) {}
+
+}
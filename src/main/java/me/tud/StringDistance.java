@@ -1,29 +1,107 @@
 package me.tud;
 
+import java.util.Arrays;
+
 public class StringDistance {
 
-    // https://en.wikipedia.org/wiki/Levenshtein_distance#Iterative_with_full_matrix
+    // https://en.wikipedia.org/wiki/Levenshtein_distance#Iterative_with_two_matrix_rows
     public static int editDistance(String s, String t) {
+        return editDistance(s, t, Integer.MAX_VALUE - 1);
+    }
+
+    // Ukkonen's cut-off: only the diagonal band of width 2 * max + 1 is evaluated,
+    // returns max + 1 as soon as the distance is known to be greater than max
+    public static int editDistance(String s, String t, int max) {
         int m = s.length();
         int n = t.length();
-        int[][] dp = new int[m + 1][n + 1];
+        if (Math.abs(m - n) > max)
+            return max + 1;
+        if (m == 0 || n == 0)
+            return Math.max(m, n);
+
+        int limit = max + 1;
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++)
+            previous[j] = Math.min(j, limit);
 
-        for (int i = 1; i <= m; i++)
-            dp[i][0] = i;
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - max);
+            int to = (int) Math.min(n, (long) i + max);
+            current[0] = Math.min(i, limit);
+            if (from > 1)
+                current[from - 1] = limit;
+            int rowMin = current[0];
+            char c = s.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == t.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(
+                    Math.min(previous[j] + 1, current[j - 1] + 1),
+                    previous[j - 1] + cost
+                );
+                current[j] = Math.min(value, limit);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < n)
+                current[to + 1] = limit;
+            if (rowMin > max)
+                return limit;
 
-        for (int j = 1; j <= n; j++)
-            dp[0][j] = j;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[n];
+    }
 
-        for (int j = 1; j <= n; j++) {
-            for (int i = 1; i <= m; i++) {
-                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
-                dp[i][j] = Math.min(
-                    Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                    dp[i - 1][j - 1] + cost
+    // https://en.wikipedia.org/wiki/Damerau%E2%80%93Levenshtein_distance#Optimal_string_alignment_distance
+    public static int damerauDistance(String s, String t) {
+        return damerauDistance(s, t, Integer.MAX_VALUE - 1);
+    }
+
+    // same cut-off as editDistance(s, t, max), but an adjacent transposition counts as one edit
+    public static int damerauDistance(String s, String t, int max) {
+        int m = s.length();
+        int n = t.length();
+        if (Math.abs(m - n) > max)
+            return max + 1;
+        if (m == 0 || n == 0)
+            return Math.max(m, n);
+
+        int limit = max + 1;
+        int[] beforePrevious = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int j = 0; j <= n; j++)
+            previous[j] = Math.min(j, limit);
+
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - max);
+            int to = (int) Math.min(n, (long) i + max);
+            Arrays.fill(current, limit);
+            current[0] = Math.min(i, limit);
+            int rowMin = current[0];
+            char c = s.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == t.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(
+                    Math.min(previous[j] + 1, current[j - 1] + 1),
+                    previous[j - 1] + cost
                 );
+                if (i > 1 && j > 1 && c == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1))
+                    value = Math.min(value, beforePrevious[j - 2] + 1);
+                current[j] = Math.min(value, limit);
+                rowMin = Math.min(rowMin, current[j]);
             }
+            if (rowMin > max)
+                return limit;
+
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
         }
-        return dp[m][n];
+        return previous[n];
     }
 
 }
@@ -0,0 +1,68 @@
+package me.tud;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+public final class ZipStream {
+
+    private ZipStream() {
+        throw new UnsupportedOperationException();
+    }
+
+    // a finished file is read through its central directory, which also covers archives the stream scan can't walk,
+    // like stored entries followed by a data descriptor
+    public static void scan(Path file, EntryHandler handler) throws IOException, InterruptedException {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory())
+                    continue;
+                try (InputStream content = zip.getInputStream(entry)) {
+                    handler.entry(entry.getName(), content);
+                }
+            }
+        }
+    }
+
+    // walks the local headers as the bytes arrive, so entries are handed over before the central directory is read
+    public static void scan(InputStream input, EntryHandler handler) throws IOException, InterruptedException {
+        ZipInputStream zip = new ZipInputStream(new FilterInputStream(input) {
+            @Override
+            public void close() {}
+        });
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory())
+                handler.entry(entry.getName(), zip);
+        }
+    }
+
+    // returns false if the archive couldn't be walked as a stream, the rest of the input is consumed either way
+    public static boolean tryScan(InputStream input, EntryHandler handler) throws IOException, InterruptedException {
+        boolean scanned = true;
+        try {
+            scan(input, handler);
+        } catch (ZipException e) {
+            scanned = false;
+        }
+        input.transferTo(OutputStream.nullOutputStream());
+        return scanned;
+    }
+
+    @FunctionalInterface
+    public interface EntryHandler {
+
+        void entry(String name, InputStream content) throws IOException, InterruptedException;
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package me.tud;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloaderTest {
+
+    // just past the default wizard.downloads.rangeThreshold, and not a multiple of the connections
+    private static final int SIZE = 8 * 1024 * 1024 + 12_345;
+    private static final int CONNECTIONS = 4;
+    private static final byte[] PAYLOAD = new byte[SIZE];
+
+    static {
+        new Random(0).nextBytes(PAYLOAD);
+    }
+
+    @TempDir
+    Path directory;
+
+    private TestServer server;
+    private URL url;
+    private Path target;
+    // the Range header of every GET, or "" for a GET without one
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private volatile String etag = "\"v1\"";
+    private volatile boolean ignoreRange;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        server.handle((exchange, hit) -> {
+            if (exchange.getRequestMethod().equals("GET"))
+                ranges.add(Objects.requireNonNullElse(exchange.getRequestHeaders().getFirst("Range"), ""));
+            TestServer.serve(exchange, PAYLOAD, Map.of("ETag", etag), !ignoreRange);
+        });
+        url = server.url("/server.jar");
+        target = directory.resolve("server.jar");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void rangedHashMatchesSingleStream() throws Exception {
+        String single = Downloader.download(url, target, 1);
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target));
+        assertEquals(List.of(""), ranges);
+
+        Files.delete(target);
+        ranges.clear();
+        String ranged = Downloader.download(url, target, CONNECTIONS);
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target));
+        assertEquals(CONNECTIONS, ranges.size());
+
+        assertEquals(sha256(PAYLOAD), single);
+        assertEquals(single, ranged);
+    }
+
+    @Test
+    void resumesFromPartState() throws Exception {
+        long[][] chunks = chunks();
+        // the first chunk finished, the second got half way and the others never started
+        long[] written = {chunks[0][1] - chunks[0][0] + 1, (chunks[1][1] - chunks[1][0] + 1) / 2, 0, 0};
+        byte[] part = new byte[SIZE];
+        for (int i = 0; i < chunks.length; i++)
+            System.arraycopy(PAYLOAD, (int) chunks[i][0], part, (int) chunks[i][0], (int) written[i]);
+        writePart(part, etag, chunks, written);
+
+        String hash = Downloader.download(url, target, CONNECTIONS);
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target));
+        assertEquals(sha256(PAYLOAD), hash);
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i < chunks.length; i++)
+            expected.add("bytes=" + (chunks[i][0] + written[i]) + "-" + chunks[i][1]);
+        assertEquals(sorted(expected), sorted(ranges));
+        assertFalse(Files.exists(directory.resolve("server.jar.part.state")));
+    }
+
+    @Test
+    void changedValidatorRestarts() throws Exception {
+        long[][] chunks = chunks();
+        long[] written = new long[chunks.length];
+        for (int i = 0; i < chunks.length; i++)
+            written[i] = chunks[i][1] - chunks[i][0] + 1;
+        // a complete download of an older file, none of it may end up in the new one
+        byte[] old = new byte[SIZE];
+        new Random(1).nextBytes(old);
+        writePart(old, "\"v0\"", chunks, written);
+
+        String hash = Downloader.download(url, target, CONNECTIONS);
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target));
+        assertEquals(sha256(PAYLOAD), hash);
+        List<String> expected = new ArrayList<>();
+        for (long[] chunk : chunks)
+            expected.add("bytes=" + chunk[0] + "-" + chunk[1]);
+        assertEquals(sorted(expected), sorted(ranges));
+    }
+
+    @Test
+    void serverIgnoringRangeFallsBackToSingleStream() throws Exception {
+        ignoreRange = true;
+
+        String hash = Downloader.download(url, target, CONNECTIONS);
+
+        assertArrayEquals(PAYLOAD, Files.readAllBytes(target));
+        assertEquals(sha256(PAYLOAD), hash);
+        assertTrue(ranges.contains(""), "no plain GET after the ranges were ignored: " + ranges);
+        assertFalse(Files.exists(directory.resolve("server.jar.part.state")));
+    }
+
+    // the same split Downloader makes for a fresh download, as {start, end} pairs
+    private static long[][] chunks() {
+        long size = (SIZE + CONNECTIONS - 1) / CONNECTIONS;
+        long[][] chunks = new long[CONNECTIONS][];
+        for (int i = 0; i < CONNECTIONS; i++)
+            chunks[i] = new long[] {i * size, Math.min(SIZE, (i + 1) * size) - 1};
+        return chunks;
+    }
+
+    private void writePart(byte[] content, String validator, long[][] chunks, long[] written) throws IOException {
+        Files.write(directory.resolve("server.jar.part"), content);
+        StringBuilder json = new StringBuilder()
+            .append("{\"url\":\"").append(url).append('"')
+            .append(",\"length\":").append(SIZE)
+            .append(",\"validator\":\"").append(validator.replace("\"", "\\\"")).append('"')
+            .append(",\"chunks\":[");
+        for (int i = 0; i < chunks.length; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"start\":").append(chunks[i][0])
+                .append(",\"end\":").append(chunks[i][1])
+                .append(",\"written\":").append(written[i]).append('}');
+        }
+        json.append("]}");
+        Files.writeString(directory.resolve("server.jar.part.state"), json, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        String[] array = values.toArray(String[]::new);
+        Arrays.sort(array);
+        return List.of(array);
+    }
+
+    private static String sha256(byte[] bytes) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+}
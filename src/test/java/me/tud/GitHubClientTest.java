@@ -0,0 +1,195 @@
+package me.tud;
+
+import com.google.gson.stream.JsonReader;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GitHubClientTest {
+
+    // seconds since the epoch, far from any real rate limit window
+    private static final long NOW = 1_000_000_000L;
+
+    private TestServer server;
+    private URI uri;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        uri = server.uri("/repos/SkriptLang/Skript");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void budgetWithoutHeadersNeverWaits() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("core");
+        for (int i = 0; i < 100; i++)
+            assertEquals(0, budget.reserve(NOW * 1000));
+    }
+
+    @Test
+    void budgetSpreadsTheLastRequestsUntilTheReset() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("core");
+        long now = NOW * 1000;
+        budget.update(headers(5, NOW + 60), now);
+        // five requests left over sixty seconds go out twelve seconds apart
+        assertEquals(0, budget.reserve(now));
+        assertEquals(12_000, budget.reserve(now));
+        assertEquals(24_000, budget.reserve(now));
+        assertEquals(36_000, budget.reserve(now));
+        assertEquals(48_000, budget.reserve(now));
+        // and the next one has to wait for the window to reset
+        assertEquals(60_000, budget.reserve(now));
+    }
+
+    @Test
+    void budgetAboveLowWatermarkDoesNotWait() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("core");
+        long now = NOW * 1000;
+        budget.update(headers(100, NOW + 60), now);
+        for (int i = 0; i < 80; i++)
+            assertEquals(0, budget.reserve(now));
+    }
+
+    @Test
+    void budgetUpdateOnlyTakesNewerWindowsOrLowerCounts() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("core");
+        long now = NOW * 1000;
+        budget.update(headers(0, NOW + 60), now);
+        // a cached response of the same window can't give quota back
+        budget.update(headers(50, NOW + 60), now);
+        assertEquals(60_000, budget.reserve(now));
+        // and neither can an expired window
+        budget.update(headers(50, NOW - 1), now);
+        assertEquals(60_000, budget.reserve(now));
+        budget.update(headers(50, NOW + 120), now);
+        assertEquals(0, budget.reserve(now));
+    }
+
+    @Test
+    void budgetLimitedHonoursRetryAfter() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("search");
+        long now = NOW * 1000;
+        budget.limited(headers(Map.of("Retry-After", "30")), 1, now);
+        assertEquals(30_000, budget.reserve(now));
+        assertEquals(20_000, budget.reserve(now + 10_000));
+    }
+
+    @Test
+    void budgetLimitedWithoutHintsBacksOff() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("core");
+        long now = NOW * 1000;
+        budget.limited(headers(Map.of()), 2, now);
+        assertEquals(120_000, budget.reserve(now));
+    }
+
+    @Test
+    void exhaustedNamesTheResource() {
+        GitHubClient.Budget budget = new GitHubClient.Budget("graphql");
+        budget.limited(headers(Map.of("Retry-After", "3600")), 1, System.currentTimeMillis());
+        String message = budget.exhausted().getMessage();
+        assertTrue(message.startsWith("GitHub API rate limit for 'graphql' exhausted, try again after "), message);
+    }
+
+    @Test
+    void concurrentSendsShareOneRequest() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.handle((exchange, hit) -> {
+            arrived.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            respond(exchange, 200, Map.of(), "\"skript\"");
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<HttpResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                futures.add(callers.submit(() -> GitHubClient.send(uri, JsonReader::nextString)));
+            assertTrue(arrived.await(10, TimeUnit.SECONDS));
+            // gives the other callers time to find the request in flight
+            Thread.sleep(300);
+            release.countDown();
+            for (Future<HttpResponse<String>> future : futures)
+                assertEquals("skript", future.get(10, TimeUnit.SECONDS).body());
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, server.hits());
+    }
+
+    @Test
+    void tooManyRequestsWaitsForRetryAfter() throws Exception {
+        server.handle((exchange, hit) -> {
+            if (hit == 1) respond(exchange, 429, Map.of("Retry-After", "1"), "{}");
+            else respond(exchange, 200, Map.of(), "\"skript\"");
+        });
+        long start = System.nanoTime();
+        HttpResponse<String> response = GitHubClient.send(uri, JsonReader::nextString);
+        assertEquals(200, response.statusCode());
+        assertEquals("skript", response.body());
+        assertEquals(2, server.hits());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    void forbiddenWithNoneRemainingWaitsForTheReset() throws Exception {
+        long reset = System.currentTimeMillis() / 1000 + 1;
+        server.handle((exchange, hit) -> {
+            if (hit == 1) {
+                respond(exchange, 403, Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(reset)), "{}");
+            } else {
+                respond(exchange, 200, Map.of(), "\"skript\"");
+            }
+        });
+        HttpResponse<String> response = GitHubClient.send(uri, JsonReader::nextString);
+        assertEquals("skript", response.body());
+        assertEquals(2, server.hits());
+        assertTrue(System.currentTimeMillis() >= reset * 1000);
+    }
+
+    @Test
+    void forbiddenWithoutRateLimitHeadersIsReturned() throws Exception {
+        server.handle((exchange, hit) -> respond(exchange, 403, Map.of(), "{}"));
+        HttpResponse<String> response = GitHubClient.send(uri, JsonReader::nextString);
+        assertEquals(403, response.statusCode());
+        assertEquals(1, server.hits());
+    }
+
+    private static HttpHeaders headers(long remaining, long reset) {
+        return headers(Map.of("X-RateLimit-Remaining", String.valueOf(remaining), "X-RateLimit-Reset", String.valueOf(reset)));
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        Map<String, List<String>> map = new HashMap<>();
+        values.forEach((name, value) -> map.put(name, List.of(value)));
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+
+    private static void respond(HttpExchange exchange, int status, Map<String, String> headers, String body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        TestServer.respond(exchange, status, headers, body);
+    }
+
+}
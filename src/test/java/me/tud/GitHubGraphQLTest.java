@@ -0,0 +1,230 @@
+package me.tud;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GitHubGraphQLTest {
+
+    private TestServer server;
+    private URI endpoint;
+    private final List<JsonObject> queries = new CopyOnWriteArrayList<>();
+    private volatile Handler handler;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        server.handle((exchange, hit) -> {
+            JsonObject query = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            queries.add(query);
+            Response response = handler.handle(query.getAsJsonObject("variables"), hit);
+            TestServer.respond(exchange, response.status(), Map.of("Content-Type", "application/json"), response.body());
+        });
+        endpoint = server.uri("/graphql");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void batchesRepositoriesUnderAliases() throws Exception {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = batch("SkriptLang/Skript", "SkriptHub/SkBee", "Tuke-Nuke/TuSKe");
+        handler = (variables, hit) -> {
+            JsonObject data = new JsonObject();
+            for (int i = 0; variables.has("owner" + i); i++)
+                data.add("r" + i, repository(variables.get("name" + i).getAsString() + "-1.0", null));
+            return ok(data, null);
+        };
+
+        GitHubGraphQL.fetch(endpoint, batch);
+
+        assertEquals(1, queries.size());
+        String query = queries.get(0).get("query").getAsString();
+        JsonObject variables = queries.get(0).getAsJsonObject("variables");
+        int i = 0;
+        for (GitHubAPI.Repository repository : batch.keySet()) {
+            assertTrue(query.contains("r" + i + ": repository(owner: $owner" + i + ", name: $name" + i + ")"), query);
+            assertEquals(repository.owner().name(), variables.get("owner" + i).getAsString());
+            assertEquals(repository.name(), variables.get("name" + i).getAsString());
+            assertTrue(batch.get(repository).getNow(false));
+            assertEquals(repository.name() + "-1.0", repository.getReleases().get(0).tagName());
+            i++;
+        }
+        assertFalse(query.contains("r" + i + ":"), query);
+    }
+
+    @Test
+    void nextPageOnlyAsksForUnfinishedRepositories() throws Exception {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = batch("SkriptLang/Skript", "SkriptHub/SkBee");
+        handler = (variables, hit) -> {
+            JsonObject data = new JsonObject();
+            if (hit == 1) {
+                data.add("r0", repository("2.9.0", "cursor"));
+                data.add("r1", repository("3.5.0", null));
+            } else {
+                data.add("r0", repository("2.8.0", null));
+            }
+            return ok(data, null);
+        };
+
+        GitHubGraphQL.fetch(endpoint, batch);
+
+        assertEquals(2, queries.size());
+        JsonObject second = queries.get(1).getAsJsonObject("variables");
+        assertEquals("Skript", second.get("name0").getAsString());
+        assertEquals("cursor", second.get("after0").getAsString());
+        assertFalse(second.has("name1"));
+        GitHubAPI.Repository skript = batch.keySet().iterator().next();
+        assertEquals(List.of("2.9.0", "2.8.0"), skript.getReleases().stream().map(GitHubAPI.Release::tagName).toList());
+        assertTrue(batch.values().stream().allMatch(future -> future.getNow(false)));
+    }
+
+    @Test
+    void missingRepositoryHasNoReleases() throws Exception {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = batch("SkriptLang/Missing", "SkriptLang/Skript", "SkriptLang/Broken");
+        handler = (variables, hit) -> {
+            JsonObject data = new JsonObject();
+            data.add("r0", null);
+            data.add("r1", repository("2.9.0", null));
+            data.add("r2", null);
+            JsonArray errors = new JsonArray();
+            errors.add(error("NOT_FOUND", "r0"));
+            errors.add(error("FORBIDDEN", "r2"));
+            return ok(data, errors);
+        };
+
+        GitHubGraphQL.fetch(endpoint, batch);
+
+        List<GitHubAPI.Repository> repositories = List.copyOf(batch.keySet());
+        assertTrue(batch.get(repositories.get(0)).getNow(false));
+        assertEquals(List.of(), repositories.get(0).getReleases());
+        assertTrue(batch.get(repositories.get(1)).getNow(false));
+        // any other error leaves the repository to REST
+        assertFalse(batch.get(repositories.get(2)).getNow(true));
+    }
+
+    @Test
+    void errorsWithoutDataFallBackToRest() {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = batch("SkriptLang/Skript", "SkriptHub/SkBee");
+        handler = (variables, hit) -> {
+            JsonArray errors = new JsonArray();
+            JsonObject error = new JsonObject();
+            error.addProperty("message", "Something went wrong while executing your query.");
+            errors.add(error);
+            return ok(null, errors);
+        };
+
+        GitHubGraphQL.fetch(endpoint, batch);
+
+        assertEquals(1, queries.size());
+        assertTrue(batch.values().stream().allMatch(future -> future.isDone() && !future.getNow(true)));
+    }
+
+    @Test
+    void serverErrorFallsBackToRest() {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = batch("SkriptLang/Skript");
+        handler = (variables, hit) -> new Response(502, "{\"message\":\"Server Error\"}");
+
+        GitHubGraphQL.fetch(endpoint, batch);
+
+        assertTrue(batch.values().stream().allMatch(future -> future.isDone() && !future.getNow(true)));
+    }
+
+    private static Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch(String... names) {
+        Map<GitHubAPI.Repository, CompletableFuture<Boolean>> batch = new LinkedHashMap<>();
+        for (String name : names) {
+            String[] parts = name.split("/");
+            GitHubAPI.Repository repository = new GitHubAPI.Repository(new GitHubAPI.User(parts[0]), parts[1]);
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            assertTrue(repository.claimGraphQL(future));
+            batch.put(repository, future);
+        }
+        return batch;
+    }
+
+    // a page holding a single release with one jar, followed by another page when a cursor is given
+    private static JsonObject repository(String tag, String cursor) {
+        JsonObject asset = new JsonObject();
+        asset.addProperty("name", "Skript-" + tag + ".jar");
+        asset.addProperty("contentType", "application/java-archive");
+        asset.addProperty("downloadUrl", "https://github.com/SkriptLang/Skript/releases/download/" + tag + "/Skript-" + tag + ".jar");
+        asset.addProperty("size", 1024);
+        JsonObject assets = new JsonObject();
+        assets.add("pageInfo", pageInfo(null));
+        assets.add("nodes", array(asset));
+
+        JsonObject release = new JsonObject();
+        release.addProperty("databaseId", tag.hashCode());
+        release.addProperty("name", tag);
+        release.addProperty("tagName", tag);
+        release.addProperty("url", "https://github.com/SkriptLang/Skript/releases/tag/" + tag);
+        release.addProperty("isDraft", false);
+        release.addProperty("isPrerelease", false);
+        release.add("releaseAssets", assets);
+
+        JsonObject releases = new JsonObject();
+        releases.add("pageInfo", pageInfo(cursor));
+        releases.add("nodes", array(release));
+        JsonObject repository = new JsonObject();
+        repository.add("releases", releases);
+        return repository;
+    }
+
+    private static JsonObject pageInfo(String cursor) {
+        JsonObject pageInfo = new JsonObject();
+        pageInfo.addProperty("hasNextPage", cursor != null);
+        pageInfo.addProperty("endCursor", cursor);
+        return pageInfo;
+    }
+
+    private static JsonArray array(JsonObject element) {
+        JsonArray array = new JsonArray();
+        array.add(element);
+        return array;
+    }
+
+    private static JsonObject error(String type, String alias) {
+        JsonObject error = new JsonObject();
+        error.addProperty("type", type);
+        JsonArray path = new JsonArray();
+        path.add(alias);
+        error.add("path", path);
+        return error;
+    }
+
+    private static Response ok(JsonObject data, JsonArray errors) {
+        JsonObject body = new JsonObject();
+        body.add("data", data);
+        if (errors != null)
+            body.add("errors", errors);
+        return new Response(200, body.toString());
+    }
+
+    private record Response(int status, String body) {}
+
+    @FunctionalInterface
+    private interface Handler {
+
+        Response handle(JsonObject variables, int hit);
+
+    }
+
+}
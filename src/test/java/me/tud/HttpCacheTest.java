@@ -0,0 +1,116 @@
+package me.tud;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpCacheTest {
+
+    private TestServer server;
+    private URI uri;
+    // the If-None-Match header of every request, or "" for a request without one
+    private final List<String> validators = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        uri = server.uri("/repos/SkriptLang/Skript");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void corruptFreshEntryIsFetchedAgain() throws Exception {
+        server.handle((exchange, hit) -> {
+            validators.add(Optional.ofNullable(exchange.getRequestHeaders().getFirst("If-None-Match")).orElse(""));
+            TestServer.respond(exchange, 200, Map.of("ETag", "\"v" + hit + "\""), "\"skript\"");
+        });
+        assertEquals("skript", send().body());
+        corrupt();
+
+        assertEquals("skript", send().body());
+        assertEquals(List.of("", ""), validators);
+        // stored again from the second response
+        assertEquals(Optional.of("\"v2\""), HttpCache.lookup(uri).header("ETag"));
+    }
+
+    @Test
+    void notModifiedForACorruptEntryIsAskedAgainWithoutValidators() throws Exception {
+        server.handle((exchange, hit) -> {
+            String validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+            validators.add(Optional.ofNullable(validator).orElse(""));
+            if (validator != null) TestServer.respond(exchange, HttpCache.NOT_MODIFIED, Map.of("ETag", validator), "");
+            else TestServer.respond(exchange, 200, Map.of("ETag", "\"v1\""), "\"skript\"");
+        });
+        send();
+        corrupt();
+
+        try (HttpCache.Scope ignored = HttpCache.revalidate()) {
+            assertEquals("skript", send().body());
+        }
+        assertEquals(List.of("", "\"v1\"", ""), validators);
+        assertNotNull(HttpCache.lookup(uri));
+    }
+
+    @Test
+    void notModifiedUpdatesValidatorsAndRateLimit() throws Exception {
+        server.handle((exchange, hit) -> {
+            if (hit == 1) {
+                TestServer.respond(exchange, 200, Map.of(
+                    "Content-Type", "application/json",
+                    "ETag", "\"v1\"",
+                    "Last-Modified", "Mon, 01 Jul 2024 12:00:00 GMT",
+                    "X-RateLimit-Remaining", "10"
+                ), "\"skript\"");
+            } else {
+                TestServer.respond(exchange, HttpCache.NOT_MODIFIED, Map.of("ETag", "\"v2\"", "X-RateLimit-Remaining", "9"), "");
+            }
+        });
+        send();
+
+        try (HttpCache.Scope ignored = HttpCache.revalidate()) {
+            HttpResponse<String> response = send();
+            assertEquals("skript", response.body());
+            assertEquals(Optional.of("9"), response.headers().firstValue("X-RateLimit-Remaining"));
+        }
+        HttpCache.Entry entry = HttpCache.lookup(uri);
+        assertEquals(Optional.of("\"v2\""), entry.header("ETag"));
+        assertEquals(Optional.of("9"), entry.header("X-RateLimit-Remaining"));
+        // anything the 304 didn't repeat is kept
+        assertEquals(Optional.of("Mon, 01 Jul 2024 12:00:00 GMT"), entry.header("Last-Modified"));
+        assertEquals(Optional.of("application/json"), entry.header("Content-Type"));
+        assertTrue(entry.fresh());
+        assertEquals(2, server.hits());
+    }
+
+    private HttpResponse<String> send() throws IOException, InterruptedException {
+        return HttpUtils.sendRequest(HttpRequest.newBuilder(uri).GET().build(), JsonReader::nextString);
+    }
+
+    // what a crash half way through writing the body leaves behind
+    private void corrupt() throws IOException {
+        Path body = Main.DATA_FOLDER.resolve("cache").resolve("http").resolve(HttpCache.key(uri) + ".json");
+        assertTrue(Files.exists(body));
+        Files.writeString(body, "\"skr");
+    }
+
+}
@@ -0,0 +1,181 @@
+package me.tud;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JarStoreTest {
+
+    private static final int CALLERS = 4;
+
+    @TempDir
+    Path directory;
+
+    private TestServer server;
+    private URL url;
+    private byte[] content;
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        // the store outlives the test, so every test fetches a url and a jar of its own
+        url = server.url("/" + System.nanoTime() + ".jar");
+        content = ("jar served as " + url).getBytes(StandardCharsets.UTF_8);
+        serve(null, null);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void linkSharesTheObject() throws Exception {
+        Path object = JarStore.fetch(url);
+        Path target = directory.resolve("server.jar");
+
+        JarStore.link(object, target);
+
+        assertTrue(Files.isSameFile(object, target));
+    }
+
+    @Test
+    void linkFallsBackToACopy() throws Exception {
+        Path object = JarStore.fetch(url);
+        // a zip file system has no hard links at all
+        try (FileSystem zip = FileSystems.newFileSystem(directory.resolve("plugins.zip"), Map.of("create", "true"))) {
+            Path target = zip.getPath("server.jar");
+            Files.writeString(target, "an older jar");
+
+            JarStore.link(object, target);
+
+            assertArrayEquals(content, Files.readAllBytes(target));
+        }
+        assertArrayEquals(content, Files.readAllBytes(object));
+    }
+
+    @Test
+    void concurrentFetchesShareOneDownload() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        serve(arrived, release);
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++)
+                futures.add(callers.submit(() -> JarStore.fetch(url)));
+            assertTrue(arrived.await(10, TimeUnit.SECONDS));
+            // gives the other callers time to find the download in flight
+            Thread.sleep(300);
+            release.countDown();
+            Path object = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Path> future : futures)
+                assertEquals(object, future.get(10, TimeUnit.SECONDS));
+            assertArrayEquals(content, Files.readAllBytes(object));
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, downloads.get());
+    }
+
+    @Test
+    void failedDownloadIsTriedAgainByTheCallersWaitingOnIt() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.handle((exchange, hit) -> {
+            if (exchange.getRequestMethod().equals("GET") && downloads.incrementAndGet() == 1) {
+                arrived.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                TestServer.respond(exchange, 404, Map.of(), "Not Found");
+                return;
+            }
+            TestServer.serve(exchange, content, Map.of(), true);
+        });
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            Future<Path> owner = callers.submit(() -> JarStore.fetch(url));
+            assertTrue(arrived.await(10, TimeUnit.SECONDS));
+            List<Future<Path>> joiners = new ArrayList<>();
+            for (int i = 1; i < CALLERS; i++)
+                joiners.add(callers.submit(() -> JarStore.fetch(url)));
+            Thread.sleep(300);
+            release.countDown();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> owner.get(10, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IOException, String.valueOf(failure.getCause()));
+            for (Future<Path> joiner : joiners)
+                assertArrayEquals(content, Files.readAllBytes(joiner.get(10, TimeUnit.SECONDS)));
+        } finally {
+            callers.shutdownNow();
+        }
+        // the failed download and a single retry shared by everyone who waited on it
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    void matchesAnIntactCopy() throws Exception {
+        Path object = JarStore.fetch(url);
+        Path target = directory.resolve("server.jar");
+        JarStore.link(object, target);
+
+        assertTrue(JarStore.matches(target, JarStore.objectHash(object)));
+        assertTrue(Files.exists(object));
+    }
+
+    @Test
+    void damagedLinkDeletesTheStoreObject() throws Exception {
+        Path object = JarStore.fetch(url);
+        String hash = JarStore.objectHash(object);
+        Path target = directory.resolve("server.jar");
+        JarStore.link(object, target);
+        // a server editing its jar in place writes through the link into the store
+        Files.writeString(target, "patched");
+
+        assertFalse(JarStore.matches(target, hash));
+        assertFalse(Files.exists(object));
+        assertNull(JarStore.lookup(url));
+
+        // the next fetch downloads it again
+        assertArrayEquals(content, Files.readAllBytes(JarStore.fetch(url, hash)));
+        assertEquals(2, downloads.get());
+    }
+
+    // serves the jar, holding the first download until released when given the latches
+    private void serve(CountDownLatch arrived, CountDownLatch release) {
+        server.handle((exchange, hit) -> {
+            if (exchange.getRequestMethod().equals("GET") && downloads.incrementAndGet() == 1 && arrived != null) {
+                arrived.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            TestServer.serve(exchange, content, Map.of(), true);
+        });
+    }
+
+}
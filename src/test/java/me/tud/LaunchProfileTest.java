@@ -0,0 +1,42 @@
+package me.tud;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LaunchProfileTest {
+
+    @Test
+    void heapIsAQuarterOfTheMachine() {
+        assertEquals(4096, LaunchProfile.heapFor(16 * 1024));
+        assertEquals(2048, LaunchProfile.heapFor(8 * 1024));
+        assertEquals(1536, LaunchProfile.heapFor(6 * 1024 + 300));
+    }
+
+    @Test
+    void heapStaysWithinBounds() {
+        assertEquals(1024, LaunchProfile.heapFor(2048));
+        assertEquals(8192, LaunchProfile.heapFor(256 * 1024));
+    }
+
+    @Test
+    void heapIsOnlyPinnedWhenAsked() {
+        LaunchProfile profile = new LaunchProfile(4096, false, null, null);
+        assertTrue(profile.jvmArguments().contains("-Xmx4096M"));
+        assertFalse(profile.jvmArguments().contains("-Xms4096M"));
+        assertFalse(profile.jvmArguments().contains("-XX:+AlwaysPreTouch"));
+
+        LaunchProfile pinned = new LaunchProfile(4096, true, null, null);
+        assertTrue(pinned.jvmArguments().contains("-Xms4096M"));
+        assertTrue(pinned.jvmArguments().contains("-XX:+AlwaysPreTouch"));
+    }
+
+    @Test
+    void debuggerOnlyWhenAPortIsSet() {
+        assertFalse(new LaunchProfile(2048, false, null, null).shellScript().contains("jdwp"));
+        assertTrue(new LaunchProfile(2048, false, 5005, null).shellScript().contains("-agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=*:5005"));
+    }
+
+}
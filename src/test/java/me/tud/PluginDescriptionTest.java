@@ -0,0 +1,118 @@
+package me.tud;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PluginDescriptionTest {
+
+    private static final String PLUGIN_YML = """
+        # generated by the build
+        name: SkBee
+        version: "3.5.0" # the release tag
+        main: 'com.shanebeestudios.skbee.SkBee'
+        api-version: 1.19
+        depend:
+          - Skript
+          - "NBTAPI"
+        softdepend: [WorldGuard, 'Vault', ]
+        commands:
+          skbee:
+            description: the main command
+        """;
+
+    private TestServer server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void parsesTheTopLevelKeys() {
+        PluginDescription description = PluginDescription.parse(PLUGIN_YML);
+        assertEquals("SkBee", description.name());
+        assertEquals("3.5.0", description.version());
+        assertEquals("com.shanebeestudios.skbee.SkBee", description.main());
+        assertEquals("1.19", description.apiVersion());
+        assertEquals(List.of("Skript", "NBTAPI"), description.depend());
+        assertEquals(List.of("WorldGuard", "Vault"), description.softDepend());
+    }
+
+    @Test
+    void parsesASingleDependency() {
+        PluginDescription description = PluginDescription.parse("name: addon\ndepend: Skript\n");
+        assertEquals(List.of("Skript"), description.depend());
+        assertEquals(List.of(), description.softDepend());
+        assertNull(description.apiVersion());
+    }
+
+    @Test
+    void supportsServersFromTheApiVersionOn() {
+        PluginDescription description = PluginDescription.parse("api-version: '1.20'");
+        assertTrue(description.supports("1.20"));
+        assertTrue(description.supports("1.20.4"));
+        assertTrue(description.supports("1.21"));
+        assertFalse(description.supports("1.19.4"));
+        assertFalse(description.supports("1.8.8"));
+
+        assertFalse(PluginDescription.parse("api-version: 1.20.5").supports("1.20.4"));
+        // without an api-version the plugin claims nothing, legacy plugins load everywhere
+        assertTrue(PluginDescription.parse("name: legacy").supports("1.8.8"));
+    }
+
+    @Test
+    void readsThePluginYmlOutOfTheAsset() throws Exception {
+        byte[] jar = RemoteZipTest.jar(ZipEntry.DEFLATED, null, RemoteZipTest.entries("plugin.yml", PLUGIN_YML.getBytes(StandardCharsets.UTF_8)));
+        server.handle((exchange, hit) -> TestServer.serve(exchange, jar, Map.of(), true));
+
+        PluginDescription description = PluginDescription.of(asset("SkBee.jar"));
+        assertEquals("SkBee", description.name());
+        assertEquals(List.of("Skript", "NBTAPI"), description.depend());
+    }
+
+    @Test
+    void jarWithoutPluginYmlIsNoPlugin() throws Exception {
+        byte[] jar = RemoteZipTest.jar(ZipEntry.DEFLATED, null, RemoteZipTest.entries("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8)));
+        server.handle((exchange, hit) -> TestServer.serve(exchange, jar, Map.of(), true));
+
+        GitHubAPI.Release.Asset sources = asset("SkBee-sources.jar");
+        assertNull(PluginDescription.of(sources));
+        // a known answer, asked again it comes from the cache
+        int hits = server.hits();
+        assertNull(PluginDescription.of(sources));
+        assertEquals(hits, server.hits());
+    }
+
+    @Test
+    void failedLookupIsTriedAgain() throws Exception {
+        byte[] jar = RemoteZipTest.jar(ZipEntry.DEFLATED, null, RemoteZipTest.entries("plugin.yml", PLUGIN_YML.getBytes(StandardCharsets.UTF_8)));
+        server.handle((exchange, hit) -> TestServer.respond(exchange, 404, Map.of(), "Not Found"));
+        GitHubAPI.Release.Asset asset = asset("SkBee.jar");
+        assertNull(PluginDescription.of(asset));
+
+        server.handle((exchange, hit) -> TestServer.serve(exchange, jar, Map.of(), true));
+        assertEquals("SkBee", PluginDescription.of(asset).name());
+    }
+
+    private GitHubAPI.Release.Asset asset(String name) throws IOException {
+        return new GitHubAPI.Release.Asset(null, name, "application/java-archive", server.url("/" + name), 0, null);
+    }
+
+}
@@ -0,0 +1,141 @@
+package me.tud;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoteZipTest {
+
+    private static final byte[] PLUGIN_YML = "name: Skript\nversion: 2.9.0\nmain: ch.njol.skript.Skript\napi-version: 1.19\n".getBytes(StandardCharsets.UTF_8);
+    private static final List<String> DESCRIPTORS = List.of("plugin.yml", "paper-plugin.yml");
+
+    private TestServer server;
+    private URL url;
+    // the Range header of every request, or "" for a request without one
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private volatile byte[] jar;
+    private volatile boolean ignoreRange;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        server.handle((exchange, hit) -> {
+            ranges.add(Objects.requireNonNullElse(exchange.getRequestHeaders().getFirst("Range"), ""));
+            TestServer.serve(exchange, jar, Map.of(), !ignoreRange);
+        });
+        url = server.url("/Skript.jar");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void readsADeflatedEntryWithRanges() throws Exception {
+        jar = jar(ZipEntry.DEFLATED, null, entries("plugin.yml", PLUGIN_YML));
+
+        assertArrayEquals(PLUGIN_YML, RemoteZip.read(url, DESCRIPTORS));
+        // the tail holds the directory, the entry sits in front of the padding and needs a range of its own
+        assertEquals(2, ranges.size());
+        assertEquals("bytes=-8192", ranges.get(0));
+        assertTrue(ranges.get(1).startsWith("bytes=0-"), ranges.toString());
+    }
+
+    @Test
+    void readsAStoredEntry() throws Exception {
+        jar = jar(ZipEntry.STORED, null, entries("plugin.yml", PLUGIN_YML));
+
+        assertArrayEquals(PLUGIN_YML, RemoteZip.read(url, DESCRIPTORS));
+        assertFalse(ranges.contains(""), ranges.toString());
+    }
+
+    @Test
+    void findsTheEndRecordBehindALongComment() throws Exception {
+        jar = jar(ZipEntry.DEFLATED, "x".repeat(20_000), entries("plugin.yml", PLUGIN_YML));
+
+        assertArrayEquals(PLUGIN_YML, RemoteZip.read(url, DESCRIPTORS));
+        assertEquals("bytes=-8192", ranges.get(0));
+        assertEquals("bytes=-" + (22 + 0xFFFF), ranges.get(1));
+    }
+
+    @Test
+    void serverIgnoringRangeSendsTheWholeJarOnce() throws Exception {
+        ignoreRange = true;
+        jar = jar(ZipEntry.DEFLATED, "x".repeat(20_000), entries("plugin.yml", PLUGIN_YML));
+
+        assertArrayEquals(PLUGIN_YML, RemoteZip.read(url, DESCRIPTORS));
+        // everything after the first response is cut from the body it already has
+        assertEquals(1, server.hits());
+    }
+
+    @Test
+    void takesTheFirstDescriptorTheJarHas() throws Exception {
+        byte[] paper = "name: Skript\napi-version: 1.20\n".getBytes(StandardCharsets.UTF_8);
+        jar = jar(ZipEntry.DEFLATED, null, entries("paper-plugin.yml", paper));
+
+        assertArrayEquals(paper, RemoteZip.read(url, DESCRIPTORS));
+    }
+
+    @Test
+    void jarWithoutPluginYmlHasNoEntry() throws Exception {
+        jar = jar(ZipEntry.DEFLATED, null, entries("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8)));
+
+        assertNull(RemoteZip.read(url, DESCRIPTORS));
+    }
+
+    // the given entry followed by enough incompressible class data to push it out of the tail
+    static Map<String, byte[]> entries(String name, byte[] content) {
+        byte[] padding = new byte[64 * 1024];
+        new Random(0).nextBytes(padding);
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(name, content);
+        entries.put("ch/njol/skript/Skript.class", padding);
+        return entries;
+    }
+
+    static byte[] jar(int method, String comment, Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+            output.setMethod(method);
+            if (comment != null)
+                output.setComment(comment);
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (method == ZipEntry.STORED) {
+                    // stored entries carry their size and crc in the local header, so they must be known up front
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCompressedSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                output.putNextEntry(zipEntry);
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+}
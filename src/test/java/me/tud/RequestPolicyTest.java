@@ -0,0 +1,227 @@
+package me.tud;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestPolicyTest {
+
+    private static final long NOW = ZonedDateTime.of(2024, 7, 1, 12, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    private TestServer server;
+    private URI uri;
+    private final CountingGate gate = new CountingGate();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new TestServer();
+        uri = server.uri("/");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void retryAfterAcceptsDeltaSeconds() {
+        assertEquals(120_000, RequestPolicy.retryAfter(headers("120"), NOW));
+        assertEquals(0, RequestPolicy.retryAfter(headers("0"), NOW));
+    }
+
+    @Test
+    void retryAfterAcceptsHttpDates() {
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.of(2024, 7, 1, 12, 0, 30, 0, ZoneOffset.UTC));
+        assertEquals(30_000, RequestPolicy.retryAfter(headers(date), NOW));
+        // a date that already passed allows the request right away
+        assertEquals(0, RequestPolicy.retryAfter(headers("Mon, 1 Jul 2024 11:00:00 GMT"), NOW));
+    }
+
+    @Test
+    void retryAfterIgnoresAnythingElse() {
+        assertEquals(-1, RequestPolicy.retryAfter(HttpHeaders.of(Map.of(), (name, value) -> true), NOW));
+        assertEquals(-1, RequestPolicy.retryAfter(headers("soon"), NOW));
+        assertEquals(-1, RequestPolicy.retryAfter(headers("-5"), NOW));
+        assertEquals(-1, RequestPolicy.retryAfter(headers("1.5"), NOW));
+        assertEquals(-1, RequestPolicy.retryAfter(headers("2024-07-01T12:00:30Z"), NOW));
+        assertEquals(-1, RequestPolicy.retryAfter(headers("99999999999999999999"), NOW));
+    }
+
+    @Test
+    void stalledBodyTimesOut() {
+        RequestPolicy policy = policy(0, false);
+        server.handle((exchange, hit) -> stall(exchange));
+        HttpTimeoutException exception = assertThrows(HttpTimeoutException.class, () -> policy.send(HttpUtils.client(), get(), RequestPolicyTest::read));
+        assertTrue(exception.getMessage().startsWith("No data received from " + uri), exception.getMessage());
+        assertEquals(1, server.hits());
+    }
+
+    @Test
+    void stalledBodyIsRetried() throws Exception {
+        RequestPolicy policy = policy(1, false);
+        server.handle((exchange, hit) -> {
+            if (hit == 1) stall(exchange);
+            else TestServer.respond(exchange, 200, Map.of(), "ok");
+        });
+        assertEquals("200 ok", policy.send(HttpUtils.client(), get(), RequestPolicyTest::read, gate));
+        assertEquals(2, server.hits());
+        assertEquals(1, gate.acquired.get());
+    }
+
+    @Test
+    void serverErrorsAreRetriedThroughTheGate() throws Exception {
+        RequestPolicy policy = policy(2, false);
+        server.handle((exchange, hit) -> TestServer.respond(exchange, hit < 3 ? 503 : 200, Map.of(), hit < 3 ? "busy" : "ok"));
+        assertEquals("200 ok", policy.send(HttpUtils.client(), get(), RequestPolicyTest::read, gate));
+        assertEquals(3, server.hits());
+        // the first attempt is the caller's, each retry asks the gate and every response is shown to it
+        assertEquals(2, gate.acquired.get());
+        assertEquals(3, gate.observed.get());
+    }
+
+    @Test
+    void serverErrorsGiveUpAfterTheRetries() throws Exception {
+        RequestPolicy policy = policy(2, false);
+        server.handle((exchange, hit) -> TestServer.respond(exchange, 502, Map.of(), "bad gateway"));
+        assertEquals("502 bad gateway", policy.send(HttpUtils.client(), get(), RequestPolicyTest::read));
+        assertEquals(3, server.hits());
+    }
+
+    @Test
+    void retryWaitsForRetryAfter() throws Exception {
+        RequestPolicy policy = policy(1, false);
+        server.handle((exchange, hit) -> TestServer.respond(exchange, hit == 1 ? 503 : 200, hit == 1 ? Map.of("Retry-After", "1") : Map.of(), "ok"));
+        long start = System.nanoTime();
+        assertEquals("200 ok", policy.send(HttpUtils.client(), get(), RequestPolicyTest::read));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    void postIsNotRetried() throws Exception {
+        RequestPolicy policy = policy(3, false);
+        server.handle((exchange, hit) -> TestServer.respond(exchange, 503, Map.of(), "busy"));
+        HttpRequest post = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+        assertEquals("503 busy", policy.send(HttpUtils.client(), post, RequestPolicyTest::read, gate));
+        assertEquals(1, server.hits());
+        assertEquals(0, gate.acquired.get());
+    }
+
+    @Test
+    void slowRequestIsHedgedAndTheLoserCancelled() throws Exception {
+        RequestPolicy policy = policy(0, true);
+        warmUp(policy);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> primaryFailed = new CompletableFuture<>();
+        server.handle((exchange, hit) -> {
+            if (hit > 1) {
+                TestServer.respond(exchange, 200, Map.of(), "hedge");
+                return;
+            }
+            release.await(10, TimeUnit.SECONDS);
+            try {
+                // enough that a hung up connection fails the write instead of filling a buffer
+                TestServer.respond(exchange, 200, Map.of(), "x".repeat(8 * 1024 * 1024));
+                primaryFailed.complete(false);
+            } catch (IOException e) {
+                primaryFailed.complete(true);
+            }
+        });
+
+        assertEquals("200 hedge", policy.send(HttpUtils.client(), get(), RequestPolicyTest::read, gate));
+        assertEquals(2, server.hits());
+        // the duplicate spends from the same budget as a retry would
+        assertEquals(1, gate.acquired.get());
+        release.countDown();
+        assertTrue(primaryFailed.get(10, TimeUnit.SECONDS), "the slow request was not cancelled");
+    }
+
+    @Test
+    void postIsNeverHedged() throws Exception {
+        RequestPolicy policy = policy(0, true);
+        warmUp(policy);
+        server.handle((exchange, hit) -> {
+            Thread.sleep(500);
+            TestServer.respond(exchange, 200, Map.of(), "slow");
+        });
+        HttpRequest post = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+        assertEquals("200 slow", policy.send(HttpUtils.client(), post, RequestPolicyTest::read, gate));
+        assertEquals(1, server.hits());
+        assertEquals(0, gate.acquired.get());
+    }
+
+    // hedging only starts once the policy has seen enough latencies to know what slow means
+    private void warmUp(RequestPolicy policy) throws IOException, InterruptedException {
+        server.handle((exchange, hit) -> TestServer.respond(exchange, 200, Map.of(), "ok"));
+        for (int i = 0; i < 20; i++)
+            policy.send(HttpUtils.client(), get(), RequestPolicyTest::read);
+        server.resetHits();
+    }
+
+    private static RequestPolicy policy(int retries, boolean hedge) {
+        return new RequestPolicy("test", Duration.ofSeconds(5), Duration.ofMillis(300), retries, Duration.ofMillis(20), Duration.ofMillis(100), hedge);
+    }
+
+    private HttpRequest get() {
+        return HttpRequest.newBuilder(uri).GET().build();
+    }
+
+    private static String read(HttpResponse<InputStream> response) throws IOException {
+        return response.statusCode() + " " + new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static HttpHeaders headers(String retryAfter) {
+        return HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)), (name, value) -> true);
+    }
+
+    // sends the headers and a first byte, then nothing until the client gives up
+    private static void stall(HttpExchange exchange) throws IOException, InterruptedException {
+        exchange.sendResponseHeaders(200, 1024);
+        OutputStream output = exchange.getResponseBody();
+        output.write('x');
+        output.flush();
+        Thread.sleep(5_000);
+    }
+
+    private static final class CountingGate implements RequestPolicy.Gate {
+
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger observed = new AtomicInteger();
+
+        @Override
+        public void acquire() {
+            acquired.incrementAndGet();
+        }
+
+        @Override
+        public void observe(HttpHeaders headers) {
+            observed.incrementAndGet();
+        }
+
+    }
+
+}
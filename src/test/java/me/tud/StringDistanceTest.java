@@ -0,0 +1,95 @@
+package me.tud;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StringDistanceTest {
+
+    private static final int RANDOM_PAIRS = 200_000;
+
+    @Test
+    void editDistanceOfKnownPairs() {
+        assertEquals(0, StringDistance.editDistance("skript", "skript"));
+        assertEquals(3, StringDistance.editDistance("kitten", "sitting"));
+        assertEquals(6, StringDistance.editDistance("", "skript"));
+        assertEquals(2, StringDistance.editDistance("skript", "sktipr"));
+    }
+
+    @Test
+    void damerauDistanceCountsATranspositionAsOneEdit() {
+        assertEquals(1, StringDistance.damerauDistance("skript", "skrpit"));
+        assertEquals(2, StringDistance.editDistance("skript", "skrpit"));
+        assertEquals(3, StringDistance.damerauDistance("kitten", "sitting"));
+        // optimal string alignment never edits a substring twice
+        assertEquals(3, StringDistance.damerauDistance("ca", "abc"));
+    }
+
+    @Test
+    void cutOffReturnsMaxPlusOne() {
+        assertEquals(3, StringDistance.editDistance("skript", "paper", 2));
+        assertEquals(3, StringDistance.damerauDistance("skript", "paper", 2));
+        // the length difference alone is enough to give up
+        assertEquals(2, StringDistance.editDistance("a", "abcdef", 1));
+        assertEquals(1, StringDistance.editDistance("skript", "skripts", 2));
+    }
+
+    @Test
+    void matchesFullMatrixOnRandomPairs() {
+        Random random = new Random(0x5c21b7);
+        for (int i = 0; i < RANDOM_PAIRS; i++) {
+            String s = randomString(random);
+            String t = randomString(random);
+            int max = random.nextInt(5);
+            int levenshtein = levenshtein(s, t);
+            int osa = optimalStringAlignment(s, t);
+            assertEquals(levenshtein, StringDistance.editDistance(s, t), s + " / " + t);
+            assertEquals(osa, StringDistance.damerauDistance(s, t), s + " / " + t);
+            assertEquals(Math.min(levenshtein, max + 1), StringDistance.editDistance(s, t, max), s + " / " + t + " within " + max);
+            assertEquals(Math.min(osa, max + 1), StringDistance.damerauDistance(s, t, max), s + " / " + t + " within " + max);
+        }
+    }
+
+    // a small alphabet so that matches, transpositions and near misses are common
+    private static String randomString(Random random) {
+        char[] chars = new char[random.nextInt(9)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) ('a' + random.nextInt(4));
+        return new String(chars);
+    }
+
+    private static int levenshtein(String s, String t) {
+        int[][] d = new int[s.length() + 1][t.length() + 1];
+        for (int i = 0; i <= s.length(); i++)
+            d[i][0] = i;
+        for (int j = 0; j <= t.length(); j++)
+            d[0][j] = j;
+        for (int i = 1; i <= s.length(); i++) {
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[s.length()][t.length()];
+    }
+
+    private static int optimalStringAlignment(String s, String t) {
+        int[][] d = new int[s.length() + 1][t.length() + 1];
+        for (int i = 0; i <= s.length(); i++)
+            d[i][0] = i;
+        for (int j = 0; j <= t.length(); j++)
+            d[0][j] = j;
+        for (int i = 1; i <= s.length(); i++) {
+            for (int j = 1; j <= t.length(); j++) {
+                int cost = s.charAt(i - 1) == t.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && s.charAt(i - 1) == t.charAt(j - 2) && s.charAt(i - 2) == t.charAt(j - 1))
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+            }
+        }
+        return d[s.length()][t.length()];
+    }
+
+}
@@ -0,0 +1,122 @@
+package me.tud;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// a local stand-in for the services the wizard talks to, on a free port so every test gets its own uris and cache entries
+final class TestServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile Handler handler = (exchange, hit) -> respond(exchange, 404, Map.of(), "");
+
+    TestServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                handler.handle(exchange, hits.incrementAndGet());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+    }
+
+    void handle(Handler handler) {
+        this.handler = handler;
+    }
+
+    URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    URL url(String path) throws MalformedURLException {
+        return uri(path).toURL();
+    }
+
+    // requests handled so far, the first one is hit 1
+    int hits() {
+        return hits.get();
+    }
+
+    void resetHits() {
+        hits.set(0);
+    }
+
+    static void respond(HttpExchange exchange, int status, Map<String, String> headers, String body) throws IOException {
+        respond(exchange, status, headers, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void respond(HttpExchange exchange, int status, Map<String, String> headers, byte[] body) throws IOException {
+        headers.forEach(exchange.getResponseHeaders()::add);
+        boolean empty = body.length == 0 || exchange.getRequestMethod().equals("HEAD");
+        exchange.sendResponseHeaders(status, empty ? -1 : body.length);
+        if (empty)
+            return;
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    // answers like a static file host: HEAD with the length, and byte ranges as "a-b", "a-" or "-n" when they're honoured
+    // Accept-Ranges is sent either way, the way a host that claims ranges but sends whole files does
+    // a range with an If-Range that doesn't match the ETag header gets the whole file
+    static void serve(HttpExchange exchange, byte[] content, Map<String, String> headers, boolean honourRange) throws IOException {
+        headers.forEach(exchange.getResponseHeaders()::add);
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", String.valueOf(content.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        int from = 0, to = content.length - 1, status = 200;
+        if (honourRange && range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(headers.get("ETag")))) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            if (bounds[0].isEmpty()) {
+                from = Math.max(0, content.length - Integer.parseInt(bounds[1]));
+            } else {
+                from = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty())
+                    to = Math.min(to, Integer.parseInt(bounds[1]));
+            }
+            status = 206;
+            exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+        }
+        exchange.sendResponseHeaders(status, to - from + 1);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(content, from, to - from + 1);
+        } catch (IOException ignored) {
+            // clients hang up on responses they can't use
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    interface Handler {
+
+        void handle(HttpExchange exchange, int hit) throws IOException, InterruptedException;
+
+    }
+
+}